@@ -6,7 +6,10 @@ import com.badlogic.gdx.backends.android.AndroidApplication;
 import com.badlogic.gdx.backends.android.AndroidApplicationConfiguration;
 
 import sk.jmisur.pidgin.core.Log;
+import sk.jmisur.pidgin.core.MappedFiles;
 import sk.jmisur.pidgin.core.Pidgin;
+import sk.jmisur.pidgin.nio.ChannelFileMapper;
+import sk.jmisur.pidgin.threads.SteppingThread;
 
 public class PidginActivity extends AndroidApplication {
 
@@ -16,7 +19,10 @@ public class PidginActivity extends AndroidApplication {
 		AndroidApplicationConfiguration config = new AndroidApplicationConfiguration();
 		config.useGL20 = false;
 
-		initialize(new Pidgin(new AndroidLog()), config);
+		// Only worth the handoff when the physics gets a core of its own.
+		boolean physicsThread = Runtime.getRuntime().availableProcessors() > 1;
+		MappedFiles.setMapper(new ChannelFileMapper());
+		initialize(new Pidgin(new AndroidLog(), physicsThread ? new SteppingThread() : null), config);
 	}
 
 	public static class AndroidLog implements Log {
@@ -25,6 +31,14 @@ public class PidginActivity extends AndroidApplication {
 		public void log(String string) {
 			android.util.Log.i("Pidgin", string);
 		}
+
+		/**
+		 * Logs the metrics under their own tag, one key=value line each, for filtering with logcat.
+		 */
+		@Override
+		public void metric(String name, float p50, float p95, float p99) {
+			android.util.Log.i("PidginMetrics", "name=" + name + " p50=" + p50 + " p95=" + p95 + " p99=" + p99);
+		}
 	}
 
 }
@@ -0,0 +1,78 @@
+package com.badlogic.gdx.imagepacker;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.imagepacker.TexturePacker.Settings;
+
+/**
+ * Pixel scanning cost of TexturePacker on a 2048x2048 character sheet with a transparent border: squeezing the
+ * whitespace, hashing for aliases, and both together as addImage does with aliases on.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TexturePackerBenchmark {
+
+	private static final int SIZE = 2048;
+	private static final int BORDER = 256;
+
+	/** BufferedImage.TYPE_4BYTE_ABGR as ImageIO reads PNGs, and TYPE_INT_ARGB. */
+	@Param({ "6", "2" })
+	public int imageType;
+
+	private BufferedImage image;
+	private Settings squeezeSettings;
+	private Settings aliasSettings;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		image = new BufferedImage(SIZE, SIZE, imageType);
+		Random random = new Random(1);
+		for (int y = BORDER; y < SIZE - BORDER; y++)
+			for (int x = BORDER; x < SIZE - BORDER; x++)
+				image.setRGB(x, y, 0xff000000 | random.nextInt());
+
+		squeezeSettings = new Settings();
+		squeezeSettings.stripWhitespace = true;
+		aliasSettings = new Settings();
+		aliasSettings.stripWhitespace = true;
+		aliasSettings.alias = true;
+	}
+
+	@Benchmark
+	public Object squeeze() {
+		TexturePacker packer = new TexturePacker(squeezeSettings);
+		packer.addImage(image, "sheet");
+		return packer;
+	}
+
+	@Benchmark
+	public String hash() {
+		return TexturePacker.hash(image);
+	}
+
+	@Benchmark
+	public Object squeezeAndHash() {
+		TexturePacker packer = new TexturePacker(aliasSettings);
+		packer.addImage(image, "sheet");
+		return packer;
+	}
+}
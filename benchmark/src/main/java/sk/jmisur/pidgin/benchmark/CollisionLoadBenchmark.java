@@ -0,0 +1,74 @@
+package sk.jmisur.pidgin.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sk.jmisur.pidgin.core.PidginHarness;
+import sk.jmisur.pidgin.core.ScriptedInput;
+import sk.jmisur.pidgin.tools.CollisionCompiler;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.World;
+
+/**
+ * Level-load cost of the real ulica map's collisions, from the tile collision file and from the compiled file, into a
+ * fresh world each time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CollisionLoadBenchmark {
+
+	private PidginHarness harness;
+	private FileHandle compiledFile;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		harness = new PidginHarness(ScriptedInput.runner());
+
+		FileHandle tmxFile = Gdx.files.internal("data/maps/ulica.tmx");
+		int[] edges = CollisionCompiler.compile(tmxFile, Gdx.files.internal("data/images/tiles/ulica.collision"));
+		File file = File.createTempFile("ulica", ".edges");
+		file.deleteOnExit();
+		CollisionCompiler.write(tmxFile, edges, file);
+		compiledFile = new FileHandle(file);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		harness.dispose();
+	}
+
+	@Benchmark
+	public void loadCollisions() {
+		World world = new World(new Vector2(0, -30f), true);
+		harness.loadCollisions(world);
+		world.dispose();
+	}
+
+	@Benchmark
+	public void loadCompiledCollisions() {
+		World world = new World(new Vector2(0, -30f), true);
+		harness.loadCompiledCollisions(compiledFile, world);
+		world.dispose();
+	}
+}
@@ -0,0 +1,61 @@
+package sk.jmisur.pidgin.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sk.jmisur.pidgin.core.PidginHarness;
+import sk.jmisur.pidgin.core.ScriptedInput;
+import sk.jmisur.pidgin.core.TiledMapHelper;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.World;
+
+/**
+ * Level-load cost of TiledMapHelper.loadCollisions on maps built by repeating the ulica map to the given width. The
+ * time per tile column should stay flat as the map gets wider.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CollisionScalingBenchmark {
+
+	@Param({ "30", "300", "3000" })
+	public int widthInTiles;
+
+	private PidginHarness harness;
+	private TiledMapHelper map;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		harness = new PidginHarness(ScriptedInput.runner());
+		map = harness.repeatMap(widthInTiles);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		harness.dispose();
+	}
+
+	@Benchmark
+	public void loadCollisions() {
+		World world = new World(new Vector2(0, -30f), true);
+		harness.loadCollisions(map, world);
+		world.dispose();
+	}
+}
@@ -0,0 +1,76 @@
+package sk.jmisur.pidgin.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sk.jmisur.pidgin.core.PidginHarness;
+import sk.jmisur.pidgin.core.ScriptedInput;
+
+/**
+ * Per-frame cost of the game loop on the real ulica map: the single parts (input, moves, physics step, camera) and a
+ * whole simulated frame.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class GameLoopBenchmark {
+
+	private static final float FRAME_TIME = 1 / 60f;
+
+	private PidginHarness harness;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		harness = new PidginHarness(ScriptedInput.runner());
+	}
+
+	@Setup(Level.Iteration)
+	public void resetJumper() {
+		harness.reset();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		harness.dispose();
+	}
+
+	@Benchmark
+	public void applyInput() {
+		harness.applyInput();
+	}
+
+	@Benchmark
+	public void doMoves() {
+		harness.doMoves();
+	}
+
+	@Benchmark
+	public void worldStep() {
+		harness.step();
+	}
+
+	@Benchmark
+	public void controlCamera() {
+		harness.controlCamera();
+	}
+
+	@Benchmark
+	public void frame() {
+		harness.frame(FRAME_TIME);
+	}
+}
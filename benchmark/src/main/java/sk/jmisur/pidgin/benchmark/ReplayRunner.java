@@ -0,0 +1,46 @@
+package sk.jmisur.pidgin.benchmark;
+
+import java.io.File;
+
+import sk.jmisur.pidgin.core.Log;
+import sk.jmisur.pidgin.core.PidginHarness;
+import sk.jmisur.pidgin.replay.InputReplay;
+
+/**
+ * Plays a replay file recorded with the desktop game's --record option headless, as fast as it runs, and prints the
+ * frame time report and where the jumper ended up. Runs of the same replay step through the same simulation, so they
+ * can be compared across builds and machines.
+ */
+public class ReplayRunner {
+
+	/**
+	 * Passed as the frame time, which the replay ignores in favor of the recorded one.
+	 */
+	private static final float FRAME_TIME = 1 / 60f;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.out.println("Usage: REPLAYFILE");
+			return;
+		}
+		Log log = new StdOutLog();
+		InputReplay replay = new InputReplay(new File(args[0]), log);
+		PidginHarness harness = new PidginHarness(replay, log);
+		while (!harness.isFinished())
+			harness.frame(FRAME_TIME);
+		harness.dispose();
+	}
+
+	private static class StdOutLog implements Log {
+
+		@Override
+		public void log(String string) {
+			System.out.println(string);
+		}
+
+		@Override
+		public void metric(String name, float p50, float p95, float p99) {
+			System.out.println("metric name=" + name + " p50=" + p50 + " p95=" + p95 + " p99=" + p99);
+		}
+	}
+}
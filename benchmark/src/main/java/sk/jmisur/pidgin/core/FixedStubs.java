@@ -0,0 +1,85 @@
+package sk.jmisur.pidgin.core;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.mockito.cglib.proxy.Callback;
+import org.mockito.cglib.proxy.CallbackFilter;
+import org.mockito.cglib.proxy.Enhancer;
+import org.mockito.cglib.proxy.FixedValue;
+import org.mockito.cglib.proxy.NoOp;
+
+/**
+ * Stubs of interfaces whose methods return fixed values. Unlike a Mockito mock, which records every call made to it, a
+ * stub allocates nothing when called, so the GL and graphics the game renders with can be stubbed while
+ * FrameAllocationTest measures a frame.
+ */
+public class FixedStubs {
+
+	/**
+	 * Creates a stub of the interface. The methods named in values return the value, any other method returns null,
+	 * false or zero, and the methods of Object behave as they do for any object.
+	 */
+	public static <T> T stub(Class<T> type, Map<String, Object> values) {
+		Method[] methods = type.getMethods();
+		final HashMap<String, Integer> callbackIndices = new HashMap<String, Integer>();
+		Callback[] callbacks = new Callback[methods.length + 1];
+		callbacks[0] = NoOp.INSTANCE;
+		for (int i = 0; i < methods.length; i++) {
+			Method method = methods[i];
+			Object value = values.containsKey(method.getName()) ? values.get(method.getName()) : defaultValue(method.getReturnType());
+			callbacks[i + 1] = new Fixed(value);
+			callbackIndices.put(signature(method), i + 1);
+		}
+
+		Enhancer enhancer = new Enhancer();
+		enhancer.setClassLoader(FixedStubs.class.getClassLoader());
+		enhancer.setInterfaces(new Class[] { type });
+		enhancer.setUseFactory(false);
+		enhancer.setCallbackFilter(new CallbackFilter() {
+
+			@Override
+			public int accept(Method method) {
+				Integer index = callbackIndices.get(signature(method));
+				return index != null ? index : 0;
+			}
+		});
+		enhancer.setCallbacks(callbacks);
+		return type.cast(enhancer.create());
+	}
+
+	private static String signature(Method method) {
+		return method.getName() + Arrays.toString(method.getParameterTypes());
+	}
+
+	/**
+	 * The value a method returns when it isn't stubbed, boxed once so returning it allocates nothing.
+	 */
+	private static Object defaultValue(Class<?> type) {
+		if (type == boolean.class) return Boolean.FALSE;
+		if (type == int.class) return Integer.valueOf(0);
+		if (type == long.class) return Long.valueOf(0);
+		if (type == float.class) return Float.valueOf(0);
+		if (type == double.class) return Double.valueOf(0);
+		if (type == short.class) return Short.valueOf((short) 0);
+		if (type == byte.class) return Byte.valueOf((byte) 0);
+		if (type == char.class) return Character.valueOf((char) 0);
+		return null;
+	}
+
+	static private class Fixed implements FixedValue {
+
+		private final Object value;
+
+		Fixed(Object value) {
+			this.value = value;
+		}
+
+		@Override
+		public Object loadObject() {
+			return value;
+		}
+	}
+}
@@ -0,0 +1,223 @@
+package sk.jmisur.pidgin.core;
+
+import java.util.HashMap;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.Application.ApplicationType;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Graphics;
+import com.badlogic.gdx.backends.headless.HeadlessFiles;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.GL10;
+import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.maps.tiled.TiledMapTileLayer;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+
+/**
+ * Runs the simulation parts of {@link Pidgin} -- input, physics and camera -- without a window. Gdx is set up with
+ * headless files, a stubbed GL and graphics and a {@link ScriptedInput}, so the real game assets are loaded (from the
+ * classpath) and the real game code is measured. The stubs, see {@link FixedStubs}, allocate nothing, so whole frames can
+ * be rendered as well. Instead of the scripted keys, the game can also take its input from
+ * an {@link InputSource}, such as a replay.
+ */
+public class PidginHarness {
+
+	public static final int SCREEN_WIDTH = 800;
+	public static final int SCREEN_HEIGHT = 480;
+
+	private final Pidgin pidgin;
+	private final ScriptedInput input;
+	private TiledMapHelper collisionHelper;
+
+	public PidginHarness(ScriptedInput input) {
+		this(input, null, new NullLog());
+	}
+
+	/**
+	 * Plays the game from the given input source, with no keys pressed.
+	 */
+	public PidginHarness(InputSource source, Log log) {
+		this(new ScriptedInput(new int[][] { {} }), source, log);
+	}
+
+	private PidginHarness(ScriptedInput input, InputSource source, Log log) {
+		this.input = input;
+		initHeadless(input);
+
+		pidgin = new Pidgin(log, null, source);
+		pidgin.create();
+		pidgin.finishLoading();
+	}
+
+	private static void initHeadless(ScriptedInput input) {
+		GdxNativesLoader.load();
+
+		HashMap<String, Object> graphicsValues = new HashMap<String, Object>();
+		graphicsValues.put("getWidth", SCREEN_WIDTH);
+		graphicsValues.put("getHeight", SCREEN_HEIGHT);
+		graphicsValues.put("getDeltaTime", Pidgin.TIME_STEP);
+		Graphics graphics = FixedStubs.stub(Graphics.class, graphicsValues);
+
+		HashMap<String, Object> appValues = new HashMap<String, Object>();
+		appValues.put("getType", ApplicationType.Desktop);
+		appValues.put("getGraphics", graphics);
+		Application app = FixedStubs.stub(Application.class, appValues);
+
+		GL10 gl = FixedStubs.stub(GL10.class, new HashMap<String, Object>());
+
+		Gdx.app = app;
+		Gdx.graphics = graphics;
+		Gdx.gl = gl;
+		Gdx.gl10 = gl;
+		Gdx.gl11 = null;
+		Gdx.gl20 = null;
+		Gdx.files = new HeadlessFiles();
+		Gdx.input = input.createInput();
+	}
+
+	/**
+	 * Runs one simulated frame of the given length and advances the input script.
+	 */
+	public void frame(float delta) {
+		pidgin.update(delta);
+		input.nextFrame();
+	}
+
+	/**
+	 * Renders one whole frame, as the game loop does, with the simulation advanced by Pidgin.TIME_STEP, and advances the
+	 * input script.
+	 */
+	public void render() {
+		pidgin.render();
+		input.nextFrame();
+	}
+
+	/**
+	 * Reports the frame metrics collected so far, as the game does once FrameMetrics.FLUSH_INTERVAL has passed.
+	 */
+	public void flushMetrics() {
+		pidgin.getMetrics().flush();
+	}
+
+	/**
+	 * Whether the input source has run out of frames.
+	 */
+	public boolean isFinished() {
+		return pidgin.isFinished();
+	}
+
+	/**
+	 * Applies the buttons of the input source's current frame, without moving the input on to the next frame, which only
+	 * {@link #frame(float)} does.
+	 */
+	public void applyInput() {
+		pidgin.applyInput(pidgin.getInputSource().getButtons());
+	}
+
+	public void doMoves() {
+		pidgin.doMoves();
+	}
+
+	public void controlCamera() {
+		pidgin.controlCamera();
+	}
+
+	/**
+	 * Advances the game's world by exactly one fixed physics step.
+	 */
+	public void step() {
+		pidgin.getWorld().step(Pidgin.TIME_STEP, 3, 3);
+	}
+
+	/**
+	 * Puts the jumper back to the start of the map.
+	 */
+	public void reset() {
+		pidgin.reset();
+	}
+
+	/**
+	 * Loads the game map's tile collisions into the given world, creating all of the streamed chunks at once. The
+	 * collisions go through a TiledMapHelper of their own, so the game's live collision chunks are left alone.
+	 */
+	public void loadCollisions(World world) {
+		loadCollisions(getCollisionHelper(), world);
+	}
+
+	/**
+	 * Loads the collisions of a map built by {@link #repeatMap(int)}.
+	 */
+	public void loadCollisions(TiledMapHelper helper, World world) {
+		pidgin.loadCollisions(helper, world);
+		createAllCollisionChunks(helper);
+	}
+
+	/**
+	 * Loads a collision file compiled by CollisionCompiler for the game's map.
+	 */
+	public void loadCompiledCollisions(FileHandle compiledFile, World world) {
+		TiledMapHelper helper = getCollisionHelper();
+		helper.loadCompiledCollisions(compiledFile, world, pidgin.getCollisionPixelsPerMeter());
+		createAllCollisionChunks(helper);
+	}
+
+	/**
+	 * A helper on the game's map that isn't the game's own.
+	 */
+	private TiledMapHelper getCollisionHelper() {
+		if (collisionHelper == null) {
+			collisionHelper = new TiledMapHelper();
+			collisionHelper.setMap(pidgin.getTiledMapHelper().getMap());
+		}
+		return collisionHelper;
+	}
+
+	private void createAllCollisionChunks(TiledMapHelper helper) {
+		helper.updateCollisionChunks(0, helper.getWidth());
+	}
+
+	/**
+	 * Builds a map of the given width by repeating the columns of the game's map, for measuring how map loading scales
+	 * with the map size.
+	 */
+	public TiledMapHelper repeatMap(int widthInTiles) {
+		TiledMapHelper source = pidgin.getTiledMapHelper();
+		TiledMapTileLayer sourceLayer = (TiledMapTileLayer) source.getMap().getLayers().get(0);
+
+		TiledMap map = new TiledMap();
+		map.getProperties().putAll(source.getMap().getProperties());
+		map.getProperties().put("width", widthInTiles);
+
+		TiledMapTileLayer layer = new TiledMapTileLayer(widthInTiles, source.getHeightInTiles(), source.getTileWidth(), source.getTileHeight());
+		for (int x = 0; x < widthInTiles; x++) {
+			for (int y = 0; y < source.getHeightInTiles(); y++) {
+				layer.setCell(x, y, sourceLayer.getCell(x % source.getWidthInTiles(), y));
+			}
+		}
+		map.getLayers().add(layer);
+
+		TiledMapHelper helper = new TiledMapHelper();
+		helper.setMap(map);
+		return helper;
+	}
+
+	public World getWorld() {
+		return pidgin.getWorld();
+	}
+
+	public void dispose() {
+		pidgin.dispose();
+	}
+
+	public static class NullLog implements Log {
+
+		@Override
+		public void log(String string) {
+		}
+
+		@Override
+		public void metric(String name, float p50, float p95, float p99) {
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package sk.jmisur.pidgin.core;
+
+import static org.mockito.Mockito.mock;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.badlogic.gdx.Input;
+import com.badlogic.gdx.Input.Keys;
+
+/**
+ * Plays back a fixed, looping script of pressed keys through a mocked {@link Input}. Every frame of the script is the
+ * list of keys held down during that frame, everything else (touches, accelerometer...) reads as idle.
+ */
+public class ScriptedInput implements Answer<Object> {
+
+	private final int[][] frames;
+	private int frame;
+
+	public ScriptedInput(int[][] frames) {
+		this.frames = frames;
+	}
+
+	/**
+	 * A script for the default constant-move mode: the jumper runs, jumps every two seconds and crouches for half a
+	 * second every five seconds.
+	 */
+	public static ScriptedInput runner() {
+		int[][] frames = new int[300][];
+		for (int i = 0; i < frames.length; i++) {
+			if (i % 120 < 10) frames[i] = new int[] { Keys.DPAD_UP };
+			else if (i >= 240 && i < 270) frames[i] = new int[] { Keys.DPAD_DOWN };
+			else frames[i] = new int[0];
+		}
+		return new ScriptedInput(frames);
+	}
+
+	public Input createInput() {
+		return mock(Input.class, this);
+	}
+
+	/**
+	 * Moves the script on to the next frame, wrapping around at the end.
+	 */
+	public void nextFrame() {
+		frame = (frame + 1) % frames.length;
+	}
+
+	@Override
+	public Object answer(InvocationOnMock invocation) throws Throwable {
+		if (invocation.getMethod().getName().equals("isKeyPressed")) {
+			int key = (Integer) invocation.getArguments()[0];
+			for (int pressed : frames[frame]) {
+				if (pressed == key) return true;
+			}
+			return false;
+		}
+		return Mockito.RETURNS_DEFAULTS.answer(invocation);
+	}
+}
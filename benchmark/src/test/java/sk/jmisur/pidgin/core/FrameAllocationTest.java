@@ -0,0 +1,122 @@
+package sk.jmisur.pidgin.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Checks that a steady-state frame of the game loop allocates nothing on the heap, both the simulation alone and a
+ * whole rendered frame with the debug overlay on. The jumper either runs, as the game starts, so the collision chunks
+ * stream in and out as it moves, or stands on the spot with the constant move turned off. Either way it jumps and
+ * crouches.
+ */
+public class FrameAllocationTest {
+
+	private static final float FRAME_TIME = 1 / 60f;
+	private static final int WARMUP_FRAMES = 1200;
+	private static final int MEASURED_FRAMES = 600;
+	/**
+	 * Frames between the metric reports while rendering, which the game only makes every FrameMetrics.FLUSH_INTERVAL.
+	 */
+	private static final int FLUSH_FRAMES = 60;
+
+	private final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+	private PidginHarness harness;
+
+	@After
+	public void tearDown() {
+		if (harness != null) harness.dispose();
+	}
+
+	@Test
+	public void steadyStateFrameAllocatesNothing() {
+		harness = new PidginHarness(new Jumper(true), new PidginHarness.NullLog());
+		assertFramesAllocateNothing(false);
+	}
+
+	@Test
+	public void constantMoveFrameAllocatesNothing() {
+		harness = new PidginHarness(new Jumper(false), new PidginHarness.NullLog());
+		assertFramesAllocateNothing(false);
+	}
+
+	@Test
+	public void renderedFrameAllocatesNothing() {
+		harness = new PidginHarness(new Jumper(true), new PidginHarness.NullLog());
+		assertFramesAllocateNothing(true);
+	}
+
+	@Test
+	public void renderedConstantMoveFrameAllocatesNothing() {
+		harness = new PidginHarness(new Jumper(false), new PidginHarness.NullLog());
+		assertFramesAllocateNothing(true);
+	}
+
+	private void assertFramesAllocateNothing(boolean render) {
+		for (int i = 0; i < WARMUP_FRAMES; i++)
+			frame(i, render);
+
+		// Reading the counter may allocate itself, measure that first.
+		long start = allocatedBytes();
+		long overhead = allocatedBytes() - start;
+
+		start = allocatedBytes();
+		for (int i = 0; i < MEASURED_FRAMES; i++)
+			frame(i, render);
+		long allocated = allocatedBytes() - start - overhead;
+
+		assertEquals("bytes allocated in " + MEASURED_FRAMES + (render ? " rendered" : "") + " frames", 0, allocated);
+	}
+
+	private void frame(int i, boolean render) {
+		if (!render) {
+			harness.frame(FRAME_TIME);
+			return;
+		}
+		harness.render();
+		if (i % FLUSH_FRAMES == FLUSH_FRAMES - 1) harness.flushMetrics();
+	}
+
+	private long allocatedBytes() {
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Turns the debug overlay on with the first frame, and the constant move off if standing, then jumps every two
+	 * seconds and crouches for half a second every five seconds, like ScriptedInput.runner.
+	 */
+	private static class Jumper implements InputSource {
+
+		private final boolean standing;
+		private int frame = -1;
+
+		Jumper(boolean standing) {
+			this.standing = standing;
+		}
+
+		@Override
+		public boolean nextFrame(float delta) {
+			frame++;
+			return true;
+		}
+
+		@Override
+		public int getButtons() {
+			if (frame == 0) return Pidgin.DEBUG | (standing ? Pidgin.TOGGLE_CONSTANT_MOVE : 0);
+			int i = frame % 300;
+			if (i % 120 < 10) return Pidgin.JUMP;
+			if (i >= 240 && i < 270) return Pidgin.CROUCH;
+			return 0;
+		}
+
+		@Override
+		public float getDelta() {
+			return FRAME_TIME;
+		}
+	}
+}
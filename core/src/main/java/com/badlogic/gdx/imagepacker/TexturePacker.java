@@ -13,15 +13,30 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
@@ -29,10 +44,23 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 
 import javax.imageio.ImageIO;
 
@@ -43,10 +71,36 @@ import com.badlogic.gdx.math.MathUtils;
 public class TexturePacker {
 
 	static Pattern indexPattern = Pattern.compile(".+_(\\d+)(_.*|$)");
+	static Pattern tilePattern = Pattern.compile("(.+)_(\\d+)$");
+
+	/**
+	 * Runs the dry runs of the page size search.
+	 */
+	static final ExecutorService searchPool = daemonPool("TexturePacker search");
+
+	/**
+	 * Encodes and writes finished pages, while the next page is planned.
+	 */
+	static final ExecutorService encodePool = daemonPool("TexturePacker encode");
+
+	/**
+	 * Page files that are named but not written yet, so the next page doesn't take the same name.
+	 */
+	static final HashSet<File> pendingPages = new HashSet();
+
+	/**
+	 * Pages written before, named by a hash of their contents, so pages that haven't changed are copied instead of drawn
+	 * and encoded again.
+	 */
+	static final File pageStore = new File(System.getProperty("user.home") + "/.texturepacker/pages");
+
+	/** Pixel formats in the header of .cim files, as in Gdx2DPixmap. */
+	static final int GDX2D_FORMAT_ALPHA = 1, GDX2D_FORMAT_RGB565 = 5, GDX2D_FORMAT_RGBA8888 = 4, GDX2D_FORMAT_RGBA4444 = 6;
 
 	ArrayList<Image> images = new ArrayList();
+	ArrayList<Future> pageWrites = new ArrayList();
 	HashMap<String, Image> imageCrcs = new HashMap();
-	FileWriter writer;
+	Writer writer;
 	int uncompressedSize, compressedSize;
 	int xPadding, yPadding;
 	final Filter filter;
@@ -65,14 +119,25 @@ public class TexturePacker {
 	}
 
 	public TexturePacker(Settings settings, File inputDir, Filter filter, File outputDir, File packFile, String levelName) throws IOException {
+		this(settings, inputDir, filter, listImageFiles(inputDir, filter), null, levelName);
+		if (images.isEmpty()) return;
+		StringWriter pack = new StringWriter();
+		pack(inputDir, outputDir, pack, levelName);
+		appendToPack(packFile, pack.toString());
+	}
+
+	/**
+	 * Collects the given files, which have already been matched by name against the filter. Images are decoded through
+	 * the given map, so a file is only read once for all the filters of a directory.
+	 */
+	TexturePacker(Settings settings, File inputDir, Filter filter, ArrayList<File> files, HashMap<File, BufferedImage> decoded, String levelName)
+			throws IOException {
 		this.settings = settings;
 		this.filter = filter;
+		this.levelName = levelName;
 
 		// Collect and squeeze images.
-		File[] files = inputDir.listFiles(filter);
-		if (files == null) return;
 		for (File file : files) {
-			if (file.isDirectory()) continue;
 			String imageName;
 
 			if (levelName == null) {
@@ -83,9 +148,15 @@ public class TexturePacker {
 			} else {
 				imageName = levelName;
 			}
-			addImage(ImageIO.read(file), imageName);
+			String cacheKey = cacheKey(settings, file);
+			addImage(decode(settings, file, cacheKey, decoded), imageName, cacheKey);
 		}
+	}
 
+	/**
+	 * Writes the pages of the collected images and their entries to the pack writer.
+	 */
+	void pack(File inputDir, File outputDir, Writer pack, String levelName) throws IOException {
 		if (images.isEmpty()) return;
 
 		System.out.println(inputDir);
@@ -95,12 +166,23 @@ public class TexturePacker {
 		else System.out.println("Filter: " + settings.defaultFilterMin + ", " + settings.defaultFilterMag + " (default)");
 		if (filter.direction != Direction.none) System.out.println("Repeat: " + filter.direction);
 
-		process(outputDir, packFile, inputDir.getName(), levelName);
+		process(outputDir, pack, inputDir.getName(), levelName);
 	}
 
 	public void addImage(BufferedImage image, String name) {
-		Image squeezed = squeeze(image, name);
+		addImage(image, name, null);
+	}
+
+	/**
+	 * @param cacheKey identifies the image file and its contents, so the squeezed rectangle can be remembered. May be
+	 *           null.
+	 */
+	void addImage(BufferedImage image, String name, String cacheKey) {
+		Image squeezed = squeeze(image, name, cacheKey);
 		if (squeezed != null) {
+			if (cacheKey != null) {
+				squeezed.source = cacheKey + ":" + squeezed.offsetX + "," + squeezed.offsetY + "," + squeezed.getWidth() + "," + squeezed.getHeight();
+			}
 			if (settings.alias) {
 				String crc = hash(squeezed);
 				Image existing = imageCrcs.get(crc);
@@ -116,6 +198,24 @@ public class TexturePacker {
 
 	public void process(File outputDir, File packFile, String prefix, String levelName) throws IOException {
 		if (images.isEmpty()) return;
+		StringWriter pack = new StringWriter();
+		process(outputDir, pack, prefix, levelName);
+		appendToPack(packFile, pack.toString());
+		prunePageStore(settings);
+	}
+
+	/**
+	 * Appends the entries to the pack file, writing only the new entries.
+	 */
+	static private void appendToPack(File packFile, String entries) throws IOException {
+		writeFile(packFile, entries.getBytes("UTF-8"), true);
+	}
+
+	/**
+	 * Writes the pages and their entries to the pack writer, which is left open.
+	 */
+	void process(File outputDir, Writer pack, String prefix, String levelName) throws IOException {
+		if (images.isEmpty()) return;
 
 		minWidth = filter.width != -1 ? filter.width : settings.minWidth;
 		minHeight = filter.height != -1 ? filter.height : settings.minHeight;
@@ -125,103 +225,92 @@ public class TexturePacker {
 		yPadding = images.size() > 1 && !filter.direction.isY() ? settings.padding : 0;
 
 		outputDir.mkdirs();
-		writer = new FileWriter(packFile, true);
+		writer = pack;
 		try {
 			while (!images.isEmpty())
 				if (!writePage(prefix, outputDir, levelName)) break;
-			if (writer != null) {
-				System.out.println("Pixels eliminated: " + (1 - compressedSize / (float) uncompressedSize) * 100 + "%");
-				System.out.println();
-			}
 		} finally {
-			writer.close();
+			// Pages must be on disk before the next directory cleans or checks them.
+			for (Future pageWrite : pageWrites)
+				result(pageWrite);
+			pageWrites.clear();
 		}
+		System.out.println("Pixels eliminated: " + (1 - compressedSize / (float) uncompressedSize) * 100 + "%");
+		System.out.println();
 	}
 
 	private boolean writePage(String prefix, File outputDir, String levelName) throws IOException {
-		// Try reasonably hard to pack images into the smallest POT size.
+		// Try reasonably hard to pack images into the smallest POT size. The images are sorted by every comparator in
+		// turn, each sort starting from the order the previous one left, so equal images keep the order of the previous
+		// comparator. Every dry run gets its own copy of the sorted images, so they run in parallel, a batch of sizes
+		// ahead, and the results are then looked at in the order of the sorts, so the chosen page doesn't depend on
+		// the thread timing.
+		ArrayList<Image> chained = new ArrayList(images);
 		Comparator bestComparator = null;
 		Comparator secondBestComparator = imageComparators.get(0);
 		int bestWidth = 99999, bestHeight = 99999;
 		int secondBestWidth = 99999, secondBestHeight = 99999;
 		int bestUsedPixels = 0;
-		int width = minWidth, height = minHeight;
-		int grownPixels = 0;
-		int i = 0, ii = 0;
-		while (true) {
-			for (Comparator comparator : imageComparators) {
-				// Pack as many images as possible, sorting the images different ways.
-				Collections.sort(images, comparator);
-				int usedPixels = insert(null, new ArrayList(images), width, height);
-				// Store the best pack, in case not all images fit on the max texture size.
-				if (usedPixels > bestUsedPixels) {
-					secondBestComparator = comparator;
-					secondBestWidth = width;
-					secondBestHeight = height;
-				}
-				// If all images fit and this sort is the best so far, take note.
-				if (usedPixels == -1) {
-					if (width * height < bestWidth * bestHeight) {
-						bestComparator = comparator;
-						bestWidth = width;
-						bestHeight = height;
-					}
+		PageSizes sizes = new PageSizes();
+		int sizesPerBatch = Math.max(1, Runtime.getRuntime().availableProcessors() / imageComparators.size());
+		boolean done = false;
+		while (!done) {
+			ArrayList<int[]> batch = new ArrayList();
+			ArrayList<ArrayList<Image>> batchOrders = new ArrayList();
+			ArrayList<Future<Integer>> results = new ArrayList();
+			// Cancelling a future doesn't stop a dry run that already started, so they check this between images.
+			final AtomicBoolean batchDone = new AtomicBoolean();
+			while (batch.size() < sizesPerBatch) {
+				final int width = sizes.width, height = sizes.height;
+				batch.add(new int[] { width, height });
+				for (Comparator comparator : imageComparators) {
+					// Pack as many images as possible, sorting the images different ways.
+					Collections.sort(chained, comparator);
+					final ArrayList<Image> sorted = new ArrayList(chained);
+					results.add(searchPool.submit(new Callable<Integer>() {
+
+						@Override
+						public Integer call() throws Exception {
+							if (batchDone.get()) return 0;
+							return insert(null, sorted, width, height, batchDone);
+						}
+					}));
 				}
+				batchOrders.add(new ArrayList(chained));
+				if (sizes.isMax()) break;
+				sizes.grow();
 			}
-			if (width == maxWidth && height == maxHeight) break;
-			if (bestComparator != null) break;
-			if (settings.pot) {
-				// 64,64 -> 128,64 -> 256,64 etc 64,128 -> 64,256 etc -> 128,128 -> 256,128 etc.
-				if (i % 3 == 0) {
-					grownPixels += MathUtils.nextPowerOfTwo(width + 1) - width;
-					width = MathUtils.nextPowerOfTwo(width + 1);
-					if (width > maxWidth) {
-						i++;
-						width -= grownPixels;
-						grownPixels = 0;
-					}
-				} else if (i % 3 == 1) {
-					grownPixels += MathUtils.nextPowerOfTwo(height + 1) - height;
-					height = MathUtils.nextPowerOfTwo(height + 1);
-					if (height > maxHeight) {
-						i++;
-						height -= grownPixels;
-						grownPixels = 0;
-					}
-				} else {
-					ii++;
-					if (ii % 2 == 1) width = MathUtils.nextPowerOfTwo(width + 1);
-					else height = MathUtils.nextPowerOfTwo(height + 1);
-					i++;
-				}
-			} else {
-				// 64-127,64 -> 64,64-127 -> 128-255,128 -> 128,128-255 etc.
-				if (i % 3 == 0) {
-					width++;
-					grownPixels++;
-					if (width == MathUtils.nextPowerOfTwo(width)) {
-						width -= grownPixels;
-						grownPixels = 0;
-						i++;
+
+			for (int n = 0; n < batch.size() && !done; n++) {
+				int width = batch.get(n)[0], height = batch.get(n)[1];
+				images = batchOrders.get(n);
+				for (int c = 0; c < imageComparators.size(); c++) {
+					Comparator comparator = imageComparators.get(c);
+					int usedPixels = result(results.get(n * imageComparators.size() + c));
+					// Store the best pack, in case not all images fit on the max texture size.
+					if (usedPixels > bestUsedPixels) {
+						secondBestComparator = comparator;
+						secondBestWidth = width;
+						secondBestHeight = height;
 					}
-				} else if (i % 3 == 1) {
-					height++;
-					grownPixels++;
-					if (height == MathUtils.nextPowerOfTwo(height)) {
-						height -= grownPixels;
-						grownPixels = 0;
-						i++;
+					// If all images fit and this sort is the best so far, take note.
+					if (usedPixels == -1) {
+						if (width * height < bestWidth * bestHeight) {
+							bestComparator = comparator;
+							bestWidth = width;
+							bestHeight = height;
+						}
 					}
-				} else {
-					if (width == MathUtils.nextPowerOfTwo(width) && height == MathUtils.nextPowerOfTwo(height)) ii++;
-					if (ii % 2 == 1) width++;
-					else height++;
-					i++;
 				}
+				if (width == maxWidth && height == maxHeight) done = true;
+				if (bestComparator != null) done = true;
 			}
-			width = Math.min(maxWidth, width);
-			height = Math.min(maxHeight, height);
+			// Sizes planned past the one that ended the search are simply not needed.
+			batchDone.set(true);
+			for (Future<Integer> result : results)
+				result.cancel(false);
 		}
+		int width, height;
 		if (bestComparator != null) {
 			Collections.sort(images, bestComparator);
 		} else {
@@ -256,10 +345,17 @@ public class TexturePacker {
 			throw new RuntimeException();
 		}
 
+		final Format format = filter.format != null ? filter.format : settings.defaultFormat;
+		String extension = settings.rawPages ? ".cim" : ".png";
 		int imageNumber = 1;
-		File outputFile = new File(outputDir, prefix + imageNumber + ".png");
-		while (outputFile.exists())
-			outputFile = new File(outputDir, prefix + ++imageNumber + ".png");
+		final File outputFile;
+		synchronized (pendingPages) {
+			File file = new File(outputDir, prefix + imageNumber + extension);
+			while (file.exists() || pendingPages.contains(file))
+				file = new File(outputDir, prefix + ++imageNumber + extension);
+			pendingPages.add(file);
+			outputFile = file;
+		}
 
 		writer.write("\n" + outputFile.getName() + "\n");
 		if (filter.format != null) {
@@ -271,142 +367,503 @@ public class TexturePacker {
 		else writer.write("filter: " + filter.minFilter + "," + filter.magFilter + "\n");
 		writer.write("repeat: " + filter.direction + "\n");
 
-		BufferedImage canvas = new BufferedImage(width, height, type);
-		insert(canvas, images, bestWidth, bestHeight);
+		ArrayList<Node> placed = new ArrayList();
+		insert(placed, images, bestWidth, bestHeight);
+		for (Node node : placed)
+			node.writePackEntry();
+
+		// A page with the same images at the same places has been written before, by any run in any directory.
+		String pageKey = pageKey(placed, width, height, type, format);
+		final File storedPage = pageKey != null ? new File(pageStore, pageKey) : null;
+		if (storedPage != null && storedPage.exists()) {
+			System.out.println("Reusing " + width + "x" + height + ": " + outputFile);
+			// The store is pruned by last modified time, so a reused page counts as recently used.
+			storedPage.setLastModified(System.currentTimeMillis());
+			pageWrites.add(encodePool.submit(new Callable() {
+
+				@Override
+				public Object call() throws Exception {
+					try {
+						copyFile(storedPage, outputFile);
+					} finally {
+						synchronized (pendingPages) {
+							pendingPages.remove(outputFile);
+						}
+					}
+					return null;
+				}
+			}));
+			compressedSize += width * height;
+			return true;
+		}
+
+		final BufferedImage canvas = new BufferedImage(width, height, type);
+		draw(canvas, placed, bestWidth, bestHeight);
 		System.out.println("Writing " + canvas.getWidth() + "x" + canvas.getHeight() + ": " + outputFile);
-		ImageIO.write(canvas, "png", outputFile);
+		pageWrites.add(encodePool.submit(new Callable() {
+
+			@Override
+			public Object call() throws Exception {
+				try {
+					if (settings.rawPages) writeRaw(canvas, format, outputFile);
+					else ImageIO.write(canvas, "png", outputFile);
+					if (storedPage != null) copyFile(outputFile, storedPage);
+				} finally {
+					synchronized (pendingPages) {
+						pendingPages.remove(outputFile);
+					}
+				}
+				return null;
+			}
+		}));
 		compressedSize += canvas.getWidth() * canvas.getHeight();
 		return true;
 	}
 
-	private int insert(BufferedImage canvas, ArrayList<Image> images, int width, int height) throws IOException {
-		if (settings.debug && canvas != null) {
-			Graphics g = canvas.getGraphics();
-			g.setColor(Color.green);
-			g.drawRect(0, 0, width - 1, height - 1);
+	/**
+	 * Returns the name of the page in the page store, a hash of everything that goes into drawing and encoding it, or
+	 * null if the page can't be stored because an image didn't come from a file.
+	 */
+	private String pageKey(ArrayList<Node> placed, int width, int height, int type, Format format) {
+		if (!settings.incremental || !settings.pageCache) return null;
+		StringBuilder key = new StringBuilder(256);
+		key.append(width).append('x').append(height).append(' ').append(type).append(' ').append(format);
+		key.append(' ').append(settings.rawPages).append(' ').append(settings.debug).append(' ').append(settings.duplicatePadding);
+		key.append(' ').append(settings.padding).append('\n');
+		for (Node node : placed) {
+			if (node.image.source == null) return null;
+			key.append(node.left).append(',').append(node.top).append(',').append(node.rotate).append(' ').append(node.image.source).append('\n');
+		}
+		return hash(key.toString());
+	}
+
+	/**
+	 * Copies through a temporary file, so a page in the store is never seen half written.
+	 */
+	static private void copyFile(File from, File to) throws IOException {
+		to.getParentFile().mkdirs();
+		// Unique in the directory, several packer processes may share the store.
+		File temp = File.createTempFile(to.getName() + ".", ".tmp", to.getParentFile());
+		FileChannel input = new FileInputStream(from).getChannel();
+		try {
+			FileChannel output = new FileOutputStream(temp).getChannel();
+			try {
+				long position = 0, size = input.size();
+				while (position < size)
+					position += input.transferTo(position, size - position, output);
+			} finally {
+				output.close();
+			}
+		} finally {
+			input.close();
 		}
+		to.delete();
+		if (!temp.renameTo(to)) {
+			temp.delete();
+			throw new IOException("Unable to write: " + to);
+		}
+	}
+
+	/**
+	 * Deletes the least recently used pages from the page store until it fits in the page cache size. Pages are touched
+	 * when they are reused, so the last modified time is the last use. Temporary files of copies in progress are left
+	 * alone.
+	 */
+	static private void prunePageStore(Settings settings) {
+		if (!settings.incremental || !settings.pageCache) return;
+		File[] pages = pageStore.listFiles(new FilenameFilter() {
+
+			@Override
+			public boolean accept(File dir, String name) {
+				return !name.endsWith(".tmp");
+			}
+		});
+		if (pages == null) return;
+		long size = 0;
+		final HashMap<File, Long> lastUse = new HashMap();
+		for (File page : pages) {
+			size += page.length();
+			lastUse.put(page, page.lastModified());
+		}
+		if (size <= settings.pageCacheSize) return;
+		Arrays.sort(pages, new Comparator<File>() {
+
+			@Override
+			public int compare(File o1, File o2) {
+				long time1 = lastUse.get(o1), time2 = lastUse.get(o2);
+				return time1 < time2 ? -1 : time1 == time2 ? 0 : 1;
+			}
+		});
+		for (int i = 0; i < pages.length && size > settings.pageCacheSize; i++) {
+			long length = pages[i].length();
+			if (pages[i].delete()) size -= length;
+		}
+	}
+
+	/**
+	 * Writes the page in the libgdx .cim format, which textures load without decoding: the width, height and Gdx2DPixmap
+	 * format, then the pixels as they are in memory. The pixels are stored, not compressed.
+	 */
+	static private void writeRaw(BufferedImage canvas, Format format, File file) throws IOException {
+		int width = canvas.getWidth(), height = canvas.getHeight();
+		Deflater deflater = new Deflater(Deflater.NO_COMPRESSION);
+		DataOutputStream output = new DataOutputStream(new DeflaterOutputStream(new BufferedOutputStream(new FileOutputStream(file)), deflater));
+		try {
+			output.writeInt(width);
+			output.writeInt(height);
+			int bytesPerPixel;
+			switch (format) {
+			case RGBA8888:
+				output.writeInt(GDX2D_FORMAT_RGBA8888);
+				bytesPerPixel = 4;
+				break;
+			case RGBA4444:
+				output.writeInt(GDX2D_FORMAT_RGBA4444);
+				bytesPerPixel = 2;
+				break;
+			case RGB565:
+				output.writeInt(GDX2D_FORMAT_RGB565);
+				bytesPerPixel = 2;
+				break;
+			case Alpha:
+				output.writeInt(GDX2D_FORMAT_ALPHA);
+				bytesPerPixel = 1;
+				break;
+			default:
+				throw new RuntimeException();
+			}
+			int[] argb = new int[width];
+			int[] gray = format == Format.Alpha ? new int[width] : null;
+			byte[] row = new byte[width * bytesPerPixel];
+			for (int y = 0; y < height; y++) {
+				// getRGB would convert the gray alpha canvas from linear to sRGB, the PNG path writes its raw samples.
+				if (gray != null) canvas.getRaster().getSamples(0, y, width, 1, 0, gray);
+				else canvas.getRGB(0, y, width, 1, argb, 0, width);
+				for (int x = 0, i = 0; x < width; x++) {
+					int pixel = argb[x];
+					int a = pixel >>> 24, r = (pixel >> 16) & 0xff, g = (pixel >> 8) & 0xff, b = pixel & 0xff;
+					switch (format) {
+					case RGBA8888:
+						row[i++] = (byte) r;
+						row[i++] = (byte) g;
+						row[i++] = (byte) b;
+						row[i++] = (byte) a;
+						break;
+					case RGBA4444: {
+						// 16 bit pixels are little endian, as gdx2d keeps them in memory.
+						int packed = (r >> 4) << 12 | (g >> 4) << 8 | (b >> 4) << 4 | a >> 4;
+						row[i++] = (byte) packed;
+						row[i++] = (byte) (packed >> 8);
+						break;
+					}
+					case RGB565: {
+						int packed = (r >> 3) << 11 | (g >> 2) << 5 | b >> 3;
+						row[i++] = (byte) packed;
+						row[i++] = (byte) (packed >> 8);
+						break;
+					}
+					default:
+						row[i++] = (byte) gray[x];
+					}
+				}
+				output.write(row);
+			}
+		} finally {
+			output.close();
+			deflater.end();
+		}
+	}
+
+	static private <T> T result(Future<T> result) throws IOException {
+		try {
+			return result.get();
+		} catch (InterruptedException ex) {
+			throw new RuntimeException(ex);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof IOException) throw (IOException) ex.getCause();
+			throw new RuntimeException(ex.getCause());
+		}
+	}
+
+	/**
+	 * The sequence of page sizes tried by writePage, from the min size up to the max size.
+	 */
+	private class PageSizes {
+
+		int width = minWidth, height = minHeight;
+		int grownPixels = 0;
+		int i = 0, ii = 0;
+
+		boolean isMax() {
+			return width == maxWidth && height == maxHeight;
+		}
+
+		void grow() {
+			if (settings.pot) {
+				// 64,64 -> 128,64 -> 256,64 etc 64,128 -> 64,256 etc -> 128,128 -> 256,128 etc.
+				if (i % 3 == 0) {
+					grownPixels += MathUtils.nextPowerOfTwo(width + 1) - width;
+					width = MathUtils.nextPowerOfTwo(width + 1);
+					if (width > maxWidth) {
+						i++;
+						width -= grownPixels;
+						grownPixels = 0;
+					}
+				} else if (i % 3 == 1) {
+					grownPixels += MathUtils.nextPowerOfTwo(height + 1) - height;
+					height = MathUtils.nextPowerOfTwo(height + 1);
+					if (height > maxHeight) {
+						i++;
+						height -= grownPixels;
+						grownPixels = 0;
+					}
+				} else {
+					ii++;
+					if (ii % 2 == 1) width = MathUtils.nextPowerOfTwo(width + 1);
+					else height = MathUtils.nextPowerOfTwo(height + 1);
+					i++;
+				}
+			} else {
+				// 64-127,64 -> 64,64-127 -> 128-255,128 -> 128,128-255 etc.
+				if (i % 3 == 0) {
+					width++;
+					grownPixels++;
+					if (width == MathUtils.nextPowerOfTwo(width)) {
+						width -= grownPixels;
+						grownPixels = 0;
+						i++;
+					}
+				} else if (i % 3 == 1) {
+					height++;
+					grownPixels++;
+					if (height == MathUtils.nextPowerOfTwo(height)) {
+						height -= grownPixels;
+						grownPixels = 0;
+						i++;
+					}
+				} else {
+					if (width == MathUtils.nextPowerOfTwo(width) && height == MathUtils.nextPowerOfTwo(height)) ii++;
+					if (ii % 2 == 1) width++;
+					else height++;
+					i++;
+				}
+			}
+			width = Math.min(maxWidth, width);
+			height = Math.min(maxHeight, height);
+		}
+	}
+
+	/**
+	 * Places as many images as fit on the page, removing them from the list. The placed nodes are added to the list
+	 * if it isn't null. Returns the pixels used, or -1 if all images fit.
+	 */
+	private int insert(ArrayList<Node> placed, ArrayList<Image> images, int width, int height) {
+		return insert(placed, images, width, height, null);
+	}
+
+	/**
+	 * Like insert above, but gives up as soon as stop is set, returning a meaningless result.
+	 */
+	private int insert(ArrayList<Node> placed, ArrayList<Image> images, int width, int height, AtomicBoolean stop) {
 		// Pretend image is larger so padding on right and bottom edges is ignored.
 		if (!filter.direction.isX()) width += xPadding;
 		if (!filter.direction.isY()) height += yPadding;
-		Node root = new Node(0, 0, width, height);
+		PageLayout layout = settings.packing == Packing.guillotine ? new GuillotineLayout(width, height) : new MaxRectsLayout(width, height);
 		int usedPixels = 0;
 		for (int i = images.size() - 1; i >= 0; i--) {
+			if (stop != null && stop.get()) return 0;
 			Image image = images.get(i);
-			Node node = root.insert(image, false);
-			if (node == null) {
-				if (settings.rotate) node = root.insert(image, true);
-				if (node == null) continue;
-			}
+			Node node = layout.insert(image);
+			if (node == null) continue;
 			usedPixels += image.getWidth() * image.getHeight();
 			images.remove(i);
-			if (canvas != null) {
-				node.writePackEntry();
-				Graphics2D g = (Graphics2D) canvas.getGraphics();
-				if (image.rotate) {
-					g.translate(node.left, node.top);
-					g.rotate(-90 * MathUtils.degreesToRadians);
-					g.translate(-node.left, -node.top);
-					g.translate(-image.getWidth(), 0);
-				}
-				if (settings.duplicatePadding) {
-					int amount = settings.padding / 2;
-					int imageWidth = image.getWidth();
-					int imageHeight = image.getHeight();
-					g.drawImage(image, node.left, node.top - amount, node.left + imageWidth, node.top, 0, 0, imageWidth, 1, null);
-					g.drawImage(image, node.left, node.top + imageHeight, node.left + imageWidth, node.top + imageHeight + amount, 0, imageHeight - 1,
-							imageWidth, imageHeight, null);
-					g.drawImage(image, node.left - amount, node.top, node.left, node.top + imageHeight, 0, 0, 1, imageHeight, null);
-					g.drawImage(image, node.left + imageWidth, node.top, node.left + imageWidth + amount, node.top + imageHeight, imageWidth - 1, 0,
-							imageWidth, imageHeight, null);
-				}
-				g.drawImage(image, node.left, node.top, null);
-				if (image.rotate) {
-					g.translate(image.getWidth(), 0);
-					g.translate(node.left, node.top);
-					g.rotate(90 * MathUtils.degreesToRadians);
-					g.translate(-node.left, -node.top);
-				}
-				if (settings.debug) {
-					g.setColor(Color.magenta);
-					int imageWidth = image.getWidth();
-					int imageHeight = image.getHeight();
-					if (image.rotate) g.drawRect(node.left, node.top, imageHeight - 1, imageWidth - 1);
-					else g.drawRect(node.left, node.top, imageWidth - 1, imageHeight - 1);
-				}
+			if (placed != null) {
+				image.rotate = node.rotate;
+				placed.add(node);
 			}
 		}
 		return images.isEmpty() ? -1 : usedPixels;
 	}
 
-	private Image squeeze(BufferedImage source, String name) {
+	private void draw(BufferedImage canvas, ArrayList<Node> placed, int width, int height) {
+		if (settings.debug) {
+			Graphics g = canvas.getGraphics();
+			g.setColor(Color.green);
+			g.drawRect(0, 0, width - 1, height - 1);
+		}
+		for (Node node : placed) {
+			Image image = node.image;
+			Graphics2D g = (Graphics2D) canvas.getGraphics();
+			if (image.rotate) {
+				g.translate(node.left, node.top);
+				g.rotate(-90 * MathUtils.degreesToRadians);
+				g.translate(-node.left, -node.top);
+				g.translate(-image.getWidth(), 0);
+			}
+			if (settings.duplicatePadding) {
+				int amount = settings.padding / 2;
+				int imageWidth = image.getWidth();
+				int imageHeight = image.getHeight();
+				g.drawImage(image, node.left, node.top - amount, node.left + imageWidth, node.top, 0, 0, imageWidth, 1, null);
+				g.drawImage(image, node.left, node.top + imageHeight, node.left + imageWidth, node.top + imageHeight + amount, 0, imageHeight - 1,
+						imageWidth, imageHeight, null);
+				g.drawImage(image, node.left - amount, node.top, node.left, node.top + imageHeight, 0, 0, 1, imageHeight, null);
+				g.drawImage(image, node.left + imageWidth, node.top, node.left + imageWidth + amount, node.top + imageHeight, imageWidth - 1, 0,
+						imageWidth, imageHeight, null);
+			}
+			g.drawImage(image, node.left, node.top, null);
+			if (image.rotate) {
+				g.translate(image.getWidth(), 0);
+				g.translate(node.left, node.top);
+				g.rotate(90 * MathUtils.degreesToRadians);
+				g.translate(-node.left, -node.top);
+			}
+			if (settings.debug) {
+				g.setColor(Color.magenta);
+				int imageWidth = image.getWidth();
+				int imageHeight = image.getHeight();
+				if (image.rotate) g.drawRect(node.left, node.top, imageHeight - 1, imageWidth - 1);
+				else g.drawRect(node.left, node.top, imageWidth - 1, imageHeight - 1);
+			}
+		}
+	}
+
+	private Image squeeze(BufferedImage source, String name, String cacheKey) {
 		if (source == null) return null;
 		if (!filter.accept(source)) return null;
 		uncompressedSize += source.getWidth() * source.getHeight();
 		WritableRaster alphaRaster = source.getAlphaRaster();
 		if (alphaRaster == null || !settings.stripWhitespace) return new Image(name, source, 0, 0, source.getWidth(), source.getHeight());
-		final byte[] a = new byte[1];
+
+		String squeezeKey = null;
+		int[] rect = null;
+		if (settings.squeezeCache && cacheKey != null) {
+			squeezeKey = cacheKey + ":" + settings.alphaThreshold + ":" + filter.direction;
+			rect = settings.squeezeRects.get(squeezeKey);
+		}
+		if (rect == null) {
+			rect = squeezeRect(source, alphaRaster);
+			if (squeezeKey != null) settings.squeezeRects.put(squeezeKey, rect);
+		}
+		if (squeezeKey != null) settings.squeezeRectsUsed.put(squeezeKey, rect);
+
+		int left = rect[0], top = rect[1], newWidth = rect[2], newHeight = rect[3];
+		if (newWidth <= 0 || newHeight <= 0) {
+			System.out.println("Ignoring blank input image: " + name);
+			return null;
+		}
+		return new Image(name, source, left, top, newWidth, newHeight);
+	}
+
+	/**
+	 * Returns the left, top, width and height of the source without the rows and columns below the alpha threshold.
+	 * Works a row at a time: the top and bottom rows are scanned until one isn't blank, then each row in between only
+	 * needs scanning up to the left and right edges found so far.
+	 */
+	private int[] squeezeRect(BufferedImage source, WritableRaster alphaRaster) {
+		int width = source.getWidth();
+		int height = source.getHeight();
+		int threshold = settings.alphaThreshold;
+		int[] alpha = new int[width];
 		int top = 0;
-		int bottom = source.getHeight();
+		int bottom = height;
 		if (!filter.direction.isY()) {
-			outer: for (int y = 0; y < source.getHeight(); y++) {
-				for (int x = 0; x < source.getWidth(); x++) {
-					alphaRaster.getDataElements(x, y, a);
-					int alpha = a[0];
-					if (alpha < 0) alpha += 256;
-					if (alpha > settings.alphaThreshold) break outer;
-				}
+			outer: for (int y = 0; y < height; y++) {
+				getAlphaRow(alphaRaster, y, alpha);
+				for (int x = 0; x < width; x++)
+					if (alpha[x] > threshold) break outer;
 				top++;
 			}
-			outer: for (int y = source.getHeight(); --y >= top;) {
-				for (int x = 0; x < source.getWidth(); x++) {
-					alphaRaster.getDataElements(x, y, a);
-					int alpha = a[0];
-					if (alpha < 0) alpha += 256;
-					if (alpha > settings.alphaThreshold) break outer;
-				}
+			outer: for (int y = height; --y >= top;) {
+				getAlphaRow(alphaRaster, y, alpha);
+				for (int x = 0; x < width; x++)
+					if (alpha[x] > threshold) break outer;
 				bottom--;
 			}
 		}
 		int left = 0;
-		int right = source.getWidth();
+		int right = width;
 		if (!filter.direction.isX()) {
-			outer: for (int x = 0; x < source.getWidth(); x++) {
-				for (int y = top; y < bottom; y++) {
-					alphaRaster.getDataElements(x, y, a);
-					int alpha = a[0];
-					if (alpha < 0) alpha += 256;
-					if (alpha > settings.alphaThreshold) break outer;
+			left = width;
+			right = 0;
+			for (int y = top; y < bottom && (left > 0 || right < width); y++) {
+				getAlphaRow(alphaRaster, y, alpha);
+				for (int x = 0; x < left; x++) {
+					if (alpha[x] > threshold) {
+						left = x;
+						break;
+					}
 				}
-				left++;
-			}
-			outer: for (int x = source.getWidth(); --x >= left;) {
-				for (int y = top; y < bottom; y++) {
-					alphaRaster.getDataElements(x, y, a);
-					int alpha = a[0];
-					if (alpha < 0) alpha += 256;
-					if (alpha > settings.alphaThreshold) break outer;
+				for (int x = width; --x >= right;) {
+					if (alpha[x] > threshold) {
+						right = x + 1;
+						break;
+					}
 				}
-				right--;
 			}
+			// A blank image squeezes to nothing.
+			if (right < left) right = left;
 		}
-		int newWidth = right - left;
-		int newHeight = bottom - top;
-		if (newWidth <= 0 || newHeight <= 0) {
-			System.out.println("Ignoring blank input image: " + name);
-			return null;
+		return new int[] { left, top, right - left, bottom - top };
+	}
+
+	/**
+	 * Reads one row of alpha values from 0 to 255. The usual byte and int ARGB images are read straight from their data
+	 * buffer, anything else through the raster.
+	 */
+	static private void getAlphaRow(Raster alphaRaster, int y, int[] alpha) {
+		int width = alphaRaster.getWidth();
+		int modelX = alphaRaster.getMinX() - alphaRaster.getSampleModelTranslateX();
+		int modelY = alphaRaster.getMinY() + y - alphaRaster.getSampleModelTranslateY();
+		SampleModel model = alphaRaster.getSampleModel();
+		DataBuffer buffer = alphaRaster.getDataBuffer();
+		if (model instanceof ComponentSampleModel && buffer instanceof DataBufferByte) {
+			ComponentSampleModel components = (ComponentSampleModel) model;
+			int bank = components.getBankIndices()[0];
+			byte[] data = ((DataBufferByte) buffer).getData(bank);
+			int pixelStride = components.getPixelStride();
+			int index = buffer.getOffsets()[bank] + components.getOffset(modelX, modelY, 0);
+			for (int x = 0; x < width; x++, index += pixelStride)
+				alpha[x] = data[index] & 0xff;
+		} else if (model instanceof SinglePixelPackedSampleModel && buffer instanceof DataBufferInt) {
+			SinglePixelPackedSampleModel packed = (SinglePixelPackedSampleModel) model;
+			int[] data = ((DataBufferInt) buffer).getData();
+			int mask = packed.getBitMasks()[0];
+			int shift = packed.getBitOffsets()[0];
+			int index = buffer.getOffset() + packed.getOffset(modelX, modelY);
+			for (int x = 0; x < width; x++, index++)
+				alpha[x] = (data[index] & mask) >>> shift;
+		} else {
+			alphaRaster.getSamples(alphaRaster.getMinX(), alphaRaster.getMinY() + y, width, 1, 0, alpha);
 		}
-		return new Image(name, source, left, top, newWidth, newHeight);
 	}
 
-	static private String hash(BufferedImage image) {
+	/**
+	 * Returns a SHA1 of the pixel data, read a row at a time.
+	 */
+	static String hash(BufferedImage image) {
 		try {
 			MessageDigest digest = MessageDigest.getInstance("SHA1");
 			WritableRaster raster = image.getRaster();
-			final byte[] pixel = new byte[4];
+			int width = image.getWidth();
+			Object row = null;
+			ByteBuffer bytes = null;
 			for (int y = 0; y < image.getHeight(); y++) {
-				for (int x = 0; x < image.getWidth(); x++) {
-					raster.getDataElements(x, y, pixel);
-					digest.update(pixel);
+				row = raster.getDataElements(0, y, width, 1, row);
+				if (row instanceof byte[]) {
+					digest.update((byte[]) row);
+				} else if (row instanceof int[]) {
+					int[] ints = (int[]) row;
+					if (bytes == null) bytes = ByteBuffer.allocate(ints.length * 4);
+					bytes.asIntBuffer().put(ints);
+					digest.update(bytes.array());
+				} else if (row instanceof short[]) {
+					short[] shorts = (short[]) row;
+					if (bytes == null) bytes = ByteBuffer.allocate(shorts.length * 2);
+					bytes.asShortBuffer().put(shorts);
+					digest.update(bytes.array());
+				} else {
+					throw new IllegalArgumentException("Unsupported image type: " + image.getType());
 				}
 			}
 			return new BigInteger(1, digest.digest()).toString(16);
@@ -415,11 +872,190 @@ public class TexturePacker {
 		}
 	}
 
+	/**
+	 * Decides where the images go on one page.
+	 */
+	private interface PageLayout {
+
+		/**
+		 * Returns the node the image was placed at, rotated if settings.rotate allows it, or null if it doesn't fit.
+		 */
+		Node insert(Image image);
+	}
+
+	/**
+	 * Recursively splits the page in two around each image.
+	 */
+	private class GuillotineLayout implements PageLayout {
+
+		final Node root;
+
+		GuillotineLayout(int width, int height) {
+			root = new Node(0, 0, width, height);
+		}
+
+		@Override
+		public Node insert(Image image) {
+			Node node = root.insert(image, false);
+			if (node == null && settings.rotate) node = root.insert(image, true);
+			return node;
+		}
+	}
+
+	/**
+	 * Keeps every maximal free rectangle of the page, and places each image in the free rectangle that scores best for
+	 * the heuristic. Wastes far less space than the guillotine split.
+	 */
+	private class MaxRectsLayout implements PageLayout {
+
+		final int width, height;
+		final ArrayList<Rect> freeRects = new ArrayList();
+		final ArrayList<Rect> usedRects = new ArrayList();
+
+		MaxRectsLayout(int width, int height) {
+			this.width = width;
+			this.height = height;
+			freeRects.add(new Rect(0, 0, width, height));
+		}
+
+		@Override
+		public Node insert(Image image) {
+			int imageWidth = image.getWidth() + xPadding;
+			int imageHeight = image.getHeight() + yPadding;
+			Rect best = null;
+			boolean bestRotate = false;
+			int bestScore1 = Integer.MAX_VALUE, bestScore2 = Integer.MAX_VALUE;
+			for (int i = 0, n = freeRects.size(); i < n; i++) {
+				Rect free = freeRects.get(i);
+				for (int r = 0; r < (settings.rotate ? 2 : 1); r++) {
+					int w = r == 0 ? imageWidth : imageHeight;
+					int h = r == 0 ? imageHeight : imageWidth;
+					if (w > free.width || h > free.height) continue;
+					int score1, score2;
+					int leftoverX = free.width - w, leftoverY = free.height - h;
+					switch (settings.packing) {
+					case maxRectsBestLongSideFit:
+						score1 = Math.max(leftoverX, leftoverY);
+						score2 = Math.min(leftoverX, leftoverY);
+						break;
+					case maxRectsBestAreaFit:
+						score1 = free.width * free.height - w * h;
+						score2 = Math.min(leftoverX, leftoverY);
+						break;
+					case maxRectsBottomLeft:
+						score1 = free.y + h;
+						score2 = free.x;
+						break;
+					case maxRectsContactPoint:
+						score1 = -contactLength(free.x, free.y, w, h);
+						score2 = 0;
+						break;
+					default:
+						score1 = Math.min(leftoverX, leftoverY);
+						score2 = Math.max(leftoverX, leftoverY);
+					}
+					if (score1 < bestScore1 || (score1 == bestScore1 && score2 < bestScore2)) {
+						best = new Rect(free.x, free.y, w, h);
+						bestRotate = r == 1;
+						bestScore1 = score1;
+						bestScore2 = score2;
+					}
+				}
+			}
+			if (best == null) return null;
+
+			for (int i = freeRects.size() - 1; i >= 0; i--)
+				if (splitFreeRect(freeRects.get(i), best)) freeRects.remove(i);
+			pruneFreeRects();
+			usedRects.add(best);
+
+			Node node = new Node(best.x, best.y, best.width, best.height);
+			node.image = image;
+			node.rotate = bestRotate;
+			return node;
+		}
+
+		/**
+		 * Adds the free space left around the used rectangle, returning true if the free rectangle was split.
+		 */
+		private boolean splitFreeRect(Rect free, Rect used) {
+			if (used.x >= free.x + free.width || used.x + used.width <= free.x || used.y >= free.y + free.height
+					|| used.y + used.height <= free.y) return false;
+			if (used.x < free.x + free.width && used.x + used.width > free.x) {
+				if (used.y > free.y && used.y < free.y + free.height) freeRects.add(new Rect(free.x, free.y, free.width, used.y - free.y));
+				if (used.y + used.height < free.y + free.height)
+					freeRects.add(new Rect(free.x, used.y + used.height, free.width, free.y + free.height - (used.y + used.height)));
+			}
+			if (used.y < free.y + free.height && used.y + used.height > free.y) {
+				if (used.x > free.x && used.x < free.x + free.width) freeRects.add(new Rect(free.x, free.y, used.x - free.x, free.height));
+				if (used.x + used.width < free.x + free.width)
+					freeRects.add(new Rect(used.x + used.width, free.y, free.x + free.width - (used.x + used.width), free.height));
+			}
+			return true;
+		}
+
+		/**
+		 * Removes the free rectangles contained in another one.
+		 */
+		private void pruneFreeRects() {
+			for (int i = 0; i < freeRects.size(); i++) {
+				for (int j = i + 1; j < freeRects.size(); j++) {
+					if (freeRects.get(j).contains(freeRects.get(i))) {
+						freeRects.remove(i);
+						i--;
+						break;
+					}
+					if (freeRects.get(i).contains(freeRects.get(j))) {
+						freeRects.remove(j);
+						j--;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Returns how much of the rectangle's outline touches the page edges and the images already placed.
+		 */
+		private int contactLength(int x, int y, int w, int h) {
+			int length = 0;
+			if (x == 0 || x + w == width) length += h;
+			if (y == 0 || y + h == height) length += w;
+			for (int i = 0, n = usedRects.size(); i < n; i++) {
+				Rect used = usedRects.get(i);
+				if (used.x == x + w || used.x + used.width == x) length += commonInterval(used.y, used.y + used.height, y, y + h);
+				if (used.y == y + h || used.y + used.height == y) length += commonInterval(used.x, used.x + used.width, x, x + w);
+			}
+			return length;
+		}
+
+		private int commonInterval(int start1, int end1, int start2, int end2) {
+			if (end1 < start2 || end2 < start1) return 0;
+			return Math.min(end1, end2) - Math.max(start1, start2);
+		}
+	}
+
+	static private class Rect {
+
+		final int x, y, width, height;
+
+		Rect(int x, int y, int width, int height) {
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+		}
+
+		boolean contains(Rect other) {
+			return other.x >= x && other.y >= y && other.x + other.width <= x + width && other.y + other.height <= y + height;
+		}
+	}
+
 	private class Node {
 
 		int left, top, width, height;
 		Node child1, child2;
 		Image image;
+		boolean rotate;
 
 		public Node(int left, int top, int width, int height) {
 			this.left = left;
@@ -429,9 +1065,10 @@ public class TexturePacker {
 		}
 
 		/**
-		 * Returns true if the image was inserted. If canvas != null, an entry is written to the pack file.
+		 * Returns the node the image was inserted into, or null. The image itself is left untouched, so dry runs can
+		 * share images across threads.
 		 */
-		public Node insert(Image image, boolean rotate) throws IOException {
+		public Node insert(Image image, boolean rotate) {
 			if (this.image != null) return null;
 			if (child1 != null) {
 				Node newNode = child1.insert(image, rotate);
@@ -450,7 +1087,7 @@ public class TexturePacker {
 			if (neededWidth > width || neededHeight > height) return null;
 			if (neededWidth == width && neededHeight == height) {
 				this.image = image;
-				image.rotate = rotate;
+				this.rotate = rotate;
 				return this;
 			}
 			int dw = width - neededWidth;
@@ -477,15 +1114,25 @@ public class TexturePacker {
 
 			int index = -1;
 			if (settings.fortiledmap) {
-				// Tiled Map Editor numbers tiles from left to
-				// right, top to bottom. So, we need to do the
-				// same thing here. This may result in some index
-				// values being skipped, but that is OK.
-				index = left / (image.getWidth() + settings.padding);
-				// XXX 3?
-				index += 3 * (top / (image.getHeight() + settings.padding));
-
-				index++;
+				// Tiles are packed as tileset_localid, the region name is the tileset
+				// name and the index the tile's local id, as AtlasTmxMapLoader looks
+				// them up. Other images keep their name and no index, unless they
+				// are all named after the level.
+				Matcher matcher = tilePattern.matcher(imageName);
+				if (matcher.matches()) {
+					imageName = matcher.group(1);
+					index = Integer.parseInt(matcher.group(2));
+				} else if (levelName != null) {
+					// Tiled Map Editor numbers tiles from left to
+					// right, top to bottom. So, we need to do the
+					// same thing here. This may result in some index
+					// values being skipped, but that is OK.
+					index = left / (image.getWidth() + settings.padding);
+					// XXX 3?
+					index += 3 * (top / (image.getHeight() + settings.padding));
+
+					index++;
+				}
 			} else {
 				Matcher matcher = indexPattern.matcher(imageName);
 				index = -1;
@@ -510,6 +1157,8 @@ public class TexturePacker {
 		final int offsetX, offsetY;
 		final int originalWidth, originalHeight;
 		boolean rotate;
+		/** The file path, CRC and squeezed rectangle the pixels came from, or null. */
+		String source;
 		ArrayList<Image> aliases = new ArrayList();
 
 		public Image(String name, BufferedImage src, int left, int top, int newWidth, int newHeight) {
@@ -557,6 +1206,40 @@ public class TexturePacker {
 		});
 	}
 
+	/**
+	 * Decoded images shared by all packer passes and runs in this VM, keyed by path and CRC. The least recently used
+	 * images are dropped when the decoded size goes over the budget.
+	 */
+	static private class ImageCache {
+
+		final LinkedHashMap<String, BufferedImage> images = new LinkedHashMap(16, 0.75f, true);
+		long size;
+
+		synchronized BufferedImage get(String key) {
+			return images.get(key);
+		}
+
+		synchronized void put(String key, BufferedImage image, long maxSize) {
+			long imageSize = size(image);
+			if (imageSize > maxSize) return;
+			BufferedImage old = images.put(key, image);
+			if (old != null) size -= size(old);
+			size += imageSize;
+			Iterator<BufferedImage> iter = images.values().iterator();
+			while (size > maxSize) {
+				size -= size(iter.next());
+				iter.remove();
+			}
+		}
+
+		static long size(BufferedImage image) {
+			DataBuffer buffer = image.getRaster().getDataBuffer();
+			return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+		}
+	}
+
+	static final ImageCache imageCache = new ImageCache();
+
 	static private class Filter implements FilenameFilter {
 
 		Direction direction;
@@ -627,6 +1310,19 @@ public class TexturePacker {
 		}
 	}
 
+	/**
+	 * How images are placed on a page. The MaxRects heuristics pick the free rectangle leaving the shortest or longest
+	 * side, the least area, the lowest position, or touching the most edges.
+	 */
+	static public enum Packing {
+		guillotine,
+		maxRectsBestShortSideFit,
+		maxRectsBestLongSideFit,
+		maxRectsBestAreaFit,
+		maxRectsBottomLeft,
+		maxRectsContactPoint;
+	}
+
 	static private enum Direction {
 		x,
 		y,
@@ -642,6 +1338,11 @@ public class TexturePacker {
 		}
 	}
 
+	/**
+	 * The order repeat directions are packed in for each format and filter.
+	 */
+	static final Direction[] packOrder = { Direction.none, Direction.x, Direction.y, Direction.xy };
+
 	static final HashMap<TextureFilter, String> filterToAbbrev = new HashMap();
 	static {
 		filterToAbbrev.put(TextureFilter.Linear, "l");
@@ -680,26 +1381,151 @@ public class TexturePacker {
 		public boolean incremental = true;
 		public boolean alias;
 		public boolean fortiledmap = false;
+		public Packing packing = Packing.guillotine;
+		/** In incremental mode, keeps written pages in ~/.texturepacker/pages and reuses the ones that haven't changed. */
+		public boolean pageCache = true;
+		/** Bytes of pages kept in the page cache, the least recently used are deleted beyond it. */
+		public long pageCacheSize = 256 * 1024 * 1024;
+		/** Writes pages as .cim files, which load without PNG decoding but are much bigger. Not for the GWT backend. */
+		public boolean rawPages = false;
+		/** Bytes of decoded images kept in memory between passes and runs, 0 to disable. */
+		public long imageCacheSize = 64 * 1024 * 1024;
+		/** Remembers squeezed rectangles in ~/.texturepacker, so unchanged images are not scanned again. */
+		public boolean squeezeCache = true;
+
+		ConcurrentHashMap<String, Long> crcs = new ConcurrentHashMap();
+		ConcurrentHashMap<String, long[]> fileStamps = new ConcurrentHashMap();
+		ConcurrentHashMap<String, String> packSections = new ConcurrentHashMap();
+		ConcurrentHashMap<String, int[]> squeezeRects = new ConcurrentHashMap();
+		ConcurrentHashMap<String, int[]> squeezeRectsUsed = new ConcurrentHashMap();
+	}
+
+	static private void process(final Settings settings, File inputDir, final File outputDir, File packFile, final String levelName) throws IOException {
+		// Collect the directories in the order their sections go in the pack file.
+		final ArrayList<File> dirs = new ArrayList();
+		collectDirectories(inputDir, dirs);
+
+		// Page files are named and cleaned by directory name prefix, so directories whose names are prefixes of each
+		// other are packed one after the other by the same task. Prefixes chain, ab joins abc and abd, so the groups are
+		// the connected components of that relation. Everything else is packed in parallel.
+		int n = dirs.size();
+		int[] roots = new int[n];
+		for (int i = 0; i < n; i++) {
+			roots[i] = i;
+			String name = dirs.get(i).getName();
+			for (int ii = 0; ii < i; ii++) {
+				String other = dirs.get(ii).getName();
+				if (!name.startsWith(other) && !other.startsWith(name)) continue;
+				// Join the two components under the older root, so every group is keyed by its first directory.
+				int root = root(roots, i), otherRoot = root(roots, ii);
+				roots[Math.max(root, otherRoot)] = Math.min(root, otherRoot);
+			}
+		}
+		ArrayList<ArrayList<Integer>> groups = new ArrayList();
+		HashMap<Integer, ArrayList<Integer>> groupsByRoot = new HashMap();
+		for (int i = 0; i < n; i++) {
+			int root = root(roots, i);
+			ArrayList<Integer> group = groupsByRoot.get(root);
+			if (group == null) {
+				group = new ArrayList();
+				groupsByRoot.put(root, group);
+				groups.add(group);
+			}
+			group.add(i);
+		}
 
-		HashMap<String, Long> crcs = new HashMap();
-		HashMap<String, String> packSections = new HashMap();
+		final String[] sections = new String[dirs.size()];
+		ExecutorService directoryPool = Executors.newFixedThreadPool(Math.max(1, Math.min(groups.size(), Runtime.getRuntime().availableProcessors())));
+		try {
+			ArrayList<Future> results = new ArrayList();
+			for (final ArrayList<Integer> group : groups) {
+				results.add(directoryPool.submit(new Callable() {
+
+					@Override
+					public Object call() throws Exception {
+						for (int index : group)
+							sections[index] = packDirectory(settings, dirs.get(index), outputDir, levelName);
+						return null;
+					}
+				}));
+			}
+			for (Future result : results) {
+				try {
+					result.get();
+				} catch (InterruptedException ex) {
+					throw new RuntimeException(ex);
+				} catch (ExecutionException ex) {
+					if (ex.getCause() instanceof IOException) throw (IOException) ex.getCause();
+					throw new RuntimeException(ex.getCause());
+				}
+			}
+		} finally {
+			directoryPool.shutdown();
+		}
+
+		StringBuilder text = new StringBuilder(4096);
+		for (String section : sections)
+			text.append(section);
+		byte[] pack = text.toString().getBytes("UTF-8");
+		writeFile(packFile, pack, false);
+		prunePageStore(settings);
 	}
 
-	static private void process(Settings settings, File inputDir, File outputDir, File packFile, String levelName) throws IOException {
-		if (inputDir.getName().startsWith(".")) return;
+	static private int root(int[] roots, int i) {
+		while (roots[i] != i)
+			i = roots[i] = roots[roots[i]];
+		return i;
+	}
 
+	static private void writeFile(File file, byte[] bytes, boolean append) throws IOException {
+		FileChannel channel = new FileOutputStream(file, append).getChannel();
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		} finally {
+			channel.close();
+		}
+	}
+
+	static private byte[] readFile(File file) throws IOException {
+		FileChannel channel = new FileInputStream(file).getChannel();
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining())
+				if (channel.read(buffer) == -1) break;
+			return buffer.array();
+		} finally {
+			channel.close();
+		}
+	}
+
+	static private void collectDirectories(File dir, ArrayList<File> dirs) {
+		if (dir.getName().startsWith(".")) return;
+		dirs.add(dir);
+		File[] files = dir.listFiles();
+		if (files == null) return;
+		for (File file : files)
+			if (file.isDirectory()) collectDirectories(file, dirs);
+	}
+
+	/**
+	 * Packs the images directly in the directory, returning its section of the pack file.
+	 */
+	static private String packDirectory(Settings settings, File inputDir, File outputDir, String levelName) throws IOException {
+		StringWriter pack = new StringWriter();
 		// Abort if nothing has changed.
 		boolean skip = false;
 		if (settings.incremental) {
 			File[] files = inputDir.listFiles();
-			if (files == null) return;
+			if (files == null) return "";
 			boolean noneHaveChanged = true;
 			int childCountNow = 0;
 			for (File file : files) {
 				if (file.isDirectory()) continue;
 				String path = file.getAbsolutePath();
 				Long crcOld = settings.crcs.get(path);
-				long crcNow = crc(file);
+				long crcNow = crc(settings, file);
 				if (crcOld == null || crcOld != crcNow) noneHaveChanged = false;
 				settings.crcs.put(path, crcNow);
 				childCountNow++;
@@ -724,9 +1550,7 @@ public class TexturePacker {
 
 			String section = settings.packSections.get(inputDir.getName());
 			if (noneHaveChanged && section != null) {
-				FileWriter writer = new FileWriter(packFile, true);
-				writer.append(section);
-				writer.close();
+				pack.append(section);
 
 				System.out.println(inputDir);
 				System.out.println("Skipping unchanged directory.");
@@ -743,14 +1567,17 @@ public class TexturePacker {
 					if (file.getName().startsWith(prefix)) file.delete();
 			}
 
-			// Just check all combinations, because we are extremely lazy.
+			// Classify the files once by the format, filter and repeat suffixes in their names, then only pack the
+			// combinations that have files, in the same order as checking all of them would.
+			ArrayList<File> files = listImageFiles(inputDir, null);
+			HashMap<File, BufferedImage> decoded = new HashMap();
 			ArrayList<TextureFilter> filters = new ArrayList();
 			filters.add(null);
 			filters.addAll(Arrays.asList(TextureFilter.values()));
 			ArrayList<Format> formats = new ArrayList();
 			formats.add(null);
 			formats.addAll(Arrays.asList(Format.values()));
-			for (int i = 0, n = formats.size(); i < n; i++) {
+			for (int i = 0, n = formats.size(); i < n && !files.isEmpty(); i++) {
 				Format format = formats.get(i);
 				for (int ii = 0, nn = filters.size(); ii < nn; ii++) {
 					TextureFilter min = filters.get(ii);
@@ -758,35 +1585,117 @@ public class TexturePacker {
 						TextureFilter mag = filters.get(iii);
 						if ((min == null && mag != null) || (min != null && mag == null)) continue;
 
-						Filter filter = new Filter(Direction.none, format, -1, -1, min, mag);
-						new TexturePacker(settings, inputDir, filter, outputDir, packFile, levelName);
-
-						for (int width = settings.minWidth; width <= settings.maxWidth; width <<= 1) {
-							filter = new Filter(Direction.x, format, width, -1, min, mag);
-							new TexturePacker(settings, inputDir, filter, outputDir, packFile, levelName);
+						for (Direction direction : packOrder) {
+							ArrayList<File> group = new ArrayList();
+							for (File file : files)
+								if (new Filter(direction, format, -1, -1, min, mag).accept(inputDir, file.getName())) group.add(file);
+							if (group.isEmpty()) continue;
+							packGroup(settings, inputDir, direction, format, min, mag, group, decoded, outputDir, pack, levelName);
 						}
+					}
+				}
+			}
+		}
 
-						for (int height = settings.minHeight; height <= settings.maxHeight; height <<= 1) {
-							filter = new Filter(Direction.y, format, -1, height, min, mag);
-							new TexturePacker(settings, inputDir, filter, outputDir, packFile, levelName);
-						}
+		return pack.toString();
+	}
 
-						for (int width = settings.minWidth; width <= settings.maxWidth; width <<= 1) {
-							for (int height = settings.minHeight; height <= settings.maxHeight; height <<= 1) {
-								filter = new Filter(Direction.xy, format, width, height, min, mag);
-								new TexturePacker(settings, inputDir, filter, outputDir, packFile, levelName);
-							}
-						}
-					}
+	/**
+	 * Packs one group of files with the same format, filter and repeat direction. Repeating images are further split
+	 * by their power of two size, which needs the images decoded.
+	 */
+	static private void packGroup(Settings settings, File inputDir, Direction direction, Format format, TextureFilter min, TextureFilter mag,
+			ArrayList<File> group, HashMap<File, BufferedImage> decoded, File outputDir, Writer pack, String levelName) throws IOException {
+		if (direction == Direction.none) {
+			Filter filter = new Filter(Direction.none, format, -1, -1, min, mag);
+			new TexturePacker(settings, inputDir, filter, group, decoded, levelName).pack(inputDir, outputDir, pack, levelName);
+			return;
+		}
+
+		for (File file : group)
+			decode(settings, file, cacheKey(settings, file), decoded);
+
+		if (direction == Direction.xy) {
+			for (int width = settings.minWidth; width <= settings.maxWidth; width <<= 1) {
+				for (int height = settings.minHeight; height <= settings.maxHeight; height <<= 1) {
+					Filter filter = new Filter(Direction.xy, format, width, height, min, mag);
+					ArrayList<File> sized = sizedImageFiles(group, decoded, filter);
+					if (!sized.isEmpty()) new TexturePacker(settings, inputDir, filter, sized, decoded, levelName).pack(inputDir, outputDir, pack, levelName);
 				}
 			}
+			return;
 		}
 
-		// Process subdirectories.
-		File[] files = inputDir.listFiles();
-		if (files == null) return;
+		int size = direction == Direction.x ? settings.minWidth : settings.minHeight;
+		int maxSize = direction == Direction.x ? settings.maxWidth : settings.maxHeight;
+		for (; size <= maxSize; size <<= 1) {
+			Filter filter;
+			if (direction == Direction.x) filter = new Filter(Direction.x, format, size, -1, min, mag);
+			else filter = new Filter(Direction.y, format, -1, size, min, mag);
+			ArrayList<File> sized = sizedImageFiles(group, decoded, filter);
+			if (!sized.isEmpty()) new TexturePacker(settings, inputDir, filter, sized, decoded, levelName).pack(inputDir, outputDir, pack, levelName);
+		}
+	}
+
+	/**
+	 * Decodes the file, first looking in the images already decoded for its directory, which may be null, and then in
+	 * the image cache.
+	 */
+	static private BufferedImage decode(Settings settings, File file, String cacheKey, HashMap<File, BufferedImage> decoded) throws IOException {
+		if (decoded != null && decoded.containsKey(file)) return decoded.get(file);
+		BufferedImage image = null;
+		if (settings.imageCacheSize > 0 && cacheKey != null) image = imageCache.get(cacheKey);
+		if (image == null) {
+			image = ImageIO.read(file);
+			if (image != null && settings.imageCacheSize > 0 && cacheKey != null) imageCache.put(cacheKey, image, settings.imageCacheSize);
+		}
+		if (decoded != null) decoded.put(file, image);
+		return image;
+	}
+
+	/**
+	 * Returns the path and CRC of the file, or null if neither the image cache nor the squeeze cache is used.
+	 */
+	static private String cacheKey(Settings settings, File file) {
+		if (settings.imageCacheSize <= 0 && !(settings.squeezeCache && settings.stripWhitespace)) return null;
+		String path = file.getAbsolutePath();
+		// The incremental check has just stored the current CRC of every file in the directory.
+		Long crc = settings.incremental ? settings.crcs.get(path) : null;
+		return path + ":" + (crc != null ? crc : crc(settings, file));
+	}
+
+	static private ExecutorService daemonPool(final String name) {
+		// Daemon threads, so the packer never keeps the VM alive.
+		return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	static private ArrayList<File> sizedImageFiles(ArrayList<File> group, HashMap<File, BufferedImage> decoded, Filter filter) {
+		ArrayList<File> sized = new ArrayList();
+		for (File file : group) {
+			BufferedImage image = decoded.get(file);
+			if (image != null && filter.accept(image)) sized.add(file);
+		}
+		return sized;
+	}
+
+	/**
+	 * Returns the files in the directory accepted by the filter, or all files if the filter is null.
+	 */
+	static private ArrayList<File> listImageFiles(File inputDir, FilenameFilter filter) {
+		ArrayList<File> imageFiles = new ArrayList();
+		File[] files = filter != null ? inputDir.listFiles(filter) : inputDir.listFiles();
+		if (files == null) return imageFiles;
 		for (File file : files)
-			if (file.isDirectory()) process(settings, file, outputDir, packFile, levelName);
+			if (!file.isDirectory()) imageFiles.add(file);
+		return imageFiles;
 	}
 
 	static public void process(Settings settings, String input, String output) throws IOException {
@@ -809,6 +1718,7 @@ public class TexturePacker {
 		File incrmentalFile = null;
 		if (settings.incremental && packFile.exists()) {
 			settings.crcs.clear();
+			settings.fileStamps.clear();
 			incrmentalFile = new File(System.getProperty("user.home") + "/.texturepacker/" + hash(inputDir.getAbsolutePath()));
 			if (incrmentalFile.exists()) {
 				BufferedReader reader = new BufferedReader(new FileReader(incrmentalFile));
@@ -817,37 +1727,37 @@ public class TexturePacker {
 					if (path == null) break;
 					String crc = reader.readLine();
 					if (crc == null) break;
-					settings.crcs.put(path, Long.parseLong(crc));
+					// The CRC, optionally followed by the modification time and size it was computed for.
+					String[] values = crc.split(" ");
+					settings.crcs.put(path, Long.parseLong(values[0]));
+					if (values.length == 3) settings.fileStamps.put(path, new long[] { Long.parseLong(values[1]), Long.parseLong(values[2]) });
 				}
 				reader.close();
 			}
 
 			// Store the pack file text for each section.
-			BufferedReader reader = new BufferedReader(new FileReader(packFile));
-			StringBuilder buffer = new StringBuilder(2048);
-			while (true) {
-				String imageName = reader.readLine();
-				if (imageName == null) break;
-				if (imageName.length() == 0) continue;
-
-				String pageName = imageName.replaceAll("\\d+.png$", "");
-				String section = settings.packSections.get(pageName);
-				if (section != null) buffer.append(section);
+			readPackSections(settings, readFile(packFile));
+		}
 
-				// buffer.append("****start\n");
-				buffer.append('\n');
-				buffer.append(imageName);
-				buffer.append('\n');
+		// Load squeeze file.
+		File squeezeFile = null;
+		settings.squeezeRects.clear();
+		settings.squeezeRectsUsed.clear();
+		if (settings.squeezeCache && settings.stripWhitespace) {
+			squeezeFile = new File(System.getProperty("user.home") + "/.texturepacker/" + hash(inputDir.getAbsolutePath()) + ".squeeze");
+			if (squeezeFile.exists()) {
+				BufferedReader reader = new BufferedReader(new FileReader(squeezeFile));
 				while (true) {
-					String line = reader.readLine();
-					if (line == null || line.length() == 0) break;
-					buffer.append(line);
-					buffer.append('\n');
+					String key = reader.readLine();
+					if (key == null) break;
+					String rect = reader.readLine();
+					if (rect == null) break;
+					String[] values = rect.split(",");
+					settings.squeezeRects.put(key, new int[] { Integer.parseInt(values[0]), Integer.parseInt(values[1]), Integer.parseInt(values[2]),
+							Integer.parseInt(values[3]) });
 				}
-				settings.packSections.put(pageName, buffer.toString());
-				buffer.setLength(0);
+				reader.close();
 			}
-			reader.close();
 		}
 
 		// Clean pack file.
@@ -860,11 +1770,56 @@ public class TexturePacker {
 			incrmentalFile.getParentFile().mkdirs();
 			FileWriter writer = new FileWriter(incrmentalFile);
 			for (Entry<String, Long> entry : settings.crcs.entrySet()) {
+				long[] stamp = settings.fileStamps.get(entry.getKey());
 				writer.write(entry.getKey() + "\n");
-				writer.write(entry.getValue() + "\n");
+				if (stamp != null) writer.write(entry.getValue() + " " + stamp[0] + " " + stamp[1] + "\n");
+				else writer.write(entry.getValue() + "\n");
 			}
 			writer.close();
 		}
+
+		// Write squeeze file, without the rectangles of images that are gone or have changed.
+		if (squeezeFile != null) {
+			squeezeFile.getParentFile().mkdirs();
+			FileWriter writer = new FileWriter(squeezeFile);
+			for (Entry<String, int[]> entry : settings.squeezeRectsUsed.entrySet()) {
+				int[] rect = entry.getValue();
+				writer.write(entry.getKey() + "\n");
+				writer.write(rect[0] + "," + rect[1] + "," + rect[2] + "," + rect[3] + "\n");
+			}
+			writer.close();
+		}
+	}
+
+	/**
+	 * Stores the pack file text for each section, read line by line.
+	 */
+	static private void readPackSections(Settings settings, byte[] pack) throws IOException {
+		BufferedReader reader = new BufferedReader(new StringReader(new String(pack, "UTF-8")));
+		StringBuilder buffer = new StringBuilder(2048);
+		while (true) {
+			String imageName = reader.readLine();
+			if (imageName == null) break;
+			if (imageName.length() == 0) continue;
+
+			String pageName = imageName.replaceAll("\\d+.(png|cim)$", "");
+			String section = settings.packSections.get(pageName);
+			if (section != null) buffer.append(section);
+
+			// buffer.append("****start\n");
+			buffer.append('\n');
+			buffer.append(imageName);
+			buffer.append('\n');
+			while (true) {
+				String line = reader.readLine();
+				if (line == null || line.length() == 0) break;
+				buffer.append(line);
+				buffer.append('\n');
+			}
+			settings.packSections.put(pageName, buffer.toString());
+			buffer.setLength(0);
+		}
+		reader.close();
 	}
 
 	static private String hash(String value) {
@@ -877,10 +1832,25 @@ public class TexturePacker {
 		}
 	}
 
+	/**
+	 * Returns the CRC of the file. The file is only read again if its modification time or size changed since the CRC was
+	 * stored.
+	 */
+	static private long crc(Settings settings, File file) {
+		String path = file.getAbsolutePath();
+		long lastModified = file.lastModified(), length = file.length();
+		Long crc = settings.crcs.get(path);
+		long[] stamp = settings.fileStamps.get(path);
+		if (crc != null && stamp != null && stamp[0] == lastModified && stamp[1] == length) return crc;
+		long crcNow = crc(file);
+		settings.fileStamps.put(path, new long[] { lastModified, length });
+		return crcNow;
+	}
+
 	static private long crc(File file) {
 		try {
 			FileInputStream input = new FileInputStream(file);
-			byte[] buffer = new byte[4096];
+			byte[] buffer = new byte[65536];
 			CRC32 crc32 = new CRC32();
 			while (true) {
 				int length = input.read(buffer);
@@ -914,4 +1884,4 @@ public class TexturePacker {
 			process(settings, input, output);
 		}
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,312 @@
+package sk.jmisur.pidgin.core;
+
+import java.util.Arrays;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.SpriteCache;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.maps.MapLayer;
+import com.badlogic.gdx.maps.MapRenderer;
+import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.maps.tiled.TiledMapTileLayer;
+import com.badlogic.gdx.maps.tiled.TiledMapTileLayer.Cell;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Disposable;
+
+/**
+ * Draws the tile layers of an orthogonal map from a SpriteCache. The map is split into chunks of CHUNK_SIZE by
+ * CHUNK_SIZE tiles, and the vertices of every chunk are built into the cache once, when the renderer is created at
+ * level load, so scrolling never builds vertices mid-frame. Drawing a frame then only draws the cached chunks that
+ * intersect the view, instead of building the vertices of every visible tile again like OrthogonalTiledMapRenderer
+ * does. The layers are static: changes to the map's cells after the renderer was created don't show.
+ */
+public class CachedTiledMapRenderer implements MapRenderer, Disposable {
+
+	/**
+	 * Size of a chunk in tiles of the map.
+	 */
+	public static final int CHUNK_SIZE = 4;
+
+	/**
+	 * Most sprites a SpriteCache can index with shorts.
+	 */
+	private static final int MAX_INDEXED_SPRITES = 5460;
+
+	private static final int VERTEX_SIZE = 5;
+	private static final int X1 = 0, Y1 = 1, C1 = 2, U1 = 3, V1 = 4;
+	private static final int X2 = 5, Y2 = 6, C2 = 7, U2 = 8, V2 = 9;
+	private static final int X3 = 10, Y3 = 11, C3 = 12, U3 = 13, V3 = 14;
+	private static final int X4 = 15, Y4 = 16, C4 = 17, U4 = 18, V4 = 19;
+
+	private final TiledMap map;
+	private final float unitScale;
+	private final SpriteCache cache;
+
+	private final int chunkColumns;
+	private final int chunkRows;
+	private final float chunkWidth;
+	private final float chunkHeight;
+
+	/**
+	 * Layers built into the chunks, or null for all of them.
+	 */
+	private final int[] layers;
+
+	/**
+	 * Cache id of every chunk, column by column.
+	 */
+	private final int[] chunkCaches;
+
+	/**
+	 * First and last texture of every chunk, or null if the chunk has no tiles, and how often the
+	 * texture changes within the chunk. The cache binds a texture for every change, so this counts the texture
+	 * switches of a frame.
+	 */
+	private final Texture[] chunkFirstTextures;
+	private final Texture[] chunkLastTextures;
+	private final int[] chunkTextureSwitches;
+	private int textureSwitches;
+	private Texture lastTexture;
+
+	private final float[] vertices = new float[4 * VERTEX_SIZE];
+	private final Matrix4 projectionMatrix = new Matrix4();
+	private final Rectangle viewBounds = new Rectangle();
+
+	public CachedTiledMapRenderer(TiledMap map, float unitScale) {
+		this(map, unitScale, null);
+	}
+
+	/**
+	 * Builds every chunk of the given tile layers, or of all of them if layers is null.
+	 */
+	public CachedTiledMapRenderer(TiledMap map, float unitScale, int[] layers) {
+		this.map = map;
+		this.unitScale = unitScale;
+		this.layers = layers;
+
+		MapGeometry geometry = new MapGeometry(map.getProperties());
+		chunkColumns = (geometry.widthInTiles + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		chunkRows = (geometry.heightInTiles + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		chunkWidth = CHUNK_SIZE * geometry.tileWidth * unitScale;
+		chunkHeight = CHUNK_SIZE * geometry.tileHeight * unitScale;
+
+		chunkCaches = new int[chunkColumns * chunkRows];
+		chunkFirstTextures = new Texture[chunkCaches.length];
+		chunkLastTextures = new Texture[chunkCaches.length];
+		chunkTextureSwitches = new int[chunkCaches.length];
+
+		// The cache is sized for every tile up front, as a SpriteCache can't grow.
+		int tiles = 0;
+		for (MapLayer layer : map.getLayers()) {
+			if (!(layer instanceof TiledMapTileLayer)) continue;
+			TiledMapTileLayer tileLayer = (TiledMapTileLayer) layer;
+			for (int x = 0; x < tileLayer.getWidth(); x++)
+				for (int y = 0; y < tileLayer.getHeight(); y++)
+					if (tileLayer.getCell(x, y) != null) tiles++;
+		}
+		cache = new SpriteCache(Math.max(tiles, 1), tiles <= MAX_INDEXED_SPRITES);
+
+		for (int column = 0; column < chunkColumns; column++)
+			for (int row = 0; row < chunkRows; row++)
+				buildChunk(column, row);
+	}
+
+	@Override
+	public void setView(OrthographicCamera camera) {
+		float width = camera.viewportWidth * camera.zoom;
+		float height = camera.viewportHeight * camera.zoom;
+		setView(camera.combined, camera.position.x - width / 2, camera.position.y - height / 2, width, height);
+	}
+
+	@Override
+	public void setView(Matrix4 projectionMatrix, float viewboundsX, float viewboundsY, float viewboundsWidth, float viewboundsHeight) {
+		this.projectionMatrix.set(projectionMatrix);
+		viewBounds.set(viewboundsX, viewboundsY, viewboundsWidth, viewboundsHeight);
+	}
+
+	/**
+	 * Draws the tile layers the renderer was created with.
+	 */
+	@Override
+	public void render() {
+		render(layers);
+	}
+
+	/**
+	 * Draws the given tile layers, which have to be the ones the renderer was created with, as a chunk holds all of its
+	 * layers.
+	 */
+	@Override
+	public void render(int[] layers) {
+		if (!Arrays.equals(layers, this.layers)) throw new IllegalArgumentException("The chunks are built for other layers.");
+		int fromColumn = Math.max(0, (int) (viewBounds.x / chunkWidth));
+		int toColumn = Math.min(chunkColumns - 1, (int) ((viewBounds.x + viewBounds.width) / chunkWidth));
+		int fromRow = Math.max(0, (int) (viewBounds.y / chunkHeight));
+		int toRow = Math.min(chunkRows - 1, (int) ((viewBounds.y + viewBounds.height) / chunkHeight));
+
+		textureSwitches = 0;
+		lastTexture = null;
+		if (fromColumn > toColumn || fromRow > toRow) {
+			cache.renderCalls = 0;
+			return;
+		}
+
+		cache.setProjectionMatrix(projectionMatrix);
+		cache.begin();
+		for (int column = fromColumn; column <= toColumn; column++) {
+			for (int row = fromRow; row <= toRow; row++) {
+				int chunk = column * chunkRows + row;
+				cache.draw(chunkCaches[chunk]);
+				if (chunkFirstTextures[chunk] == null) continue;
+				if (chunkFirstTextures[chunk] != lastTexture) textureSwitches++;
+				textureSwitches += chunkTextureSwitches[chunk];
+				lastTexture = chunkLastTextures[chunk];
+			}
+		}
+		cache.end();
+	}
+
+	private void buildChunk(int column, int row) {
+		cache.beginCache();
+		if (layers == null) {
+			for (int i = 0, n = map.getLayers().getCount(); i < n; i++)
+				addLayer(map.getLayers().get(i), column, row);
+		} else {
+			for (int layer : layers)
+				addLayer(map.getLayers().get(layer), column, row);
+		}
+		chunkCaches[column * chunkRows + row] = cache.endCache();
+	}
+
+	/**
+	 * Adds the tiles of the layer in the given chunk to the cache being built, the same way OrthogonalTiledMapRenderer
+	 * draws them.
+	 */
+	private void addLayer(MapLayer mapLayer, int column, int row) {
+		if (!mapLayer.isVisible() || !(mapLayer instanceof TiledMapTileLayer)) return;
+		TiledMapTileLayer layer = (TiledMapTileLayer) mapLayer;
+
+		float color = Color.toFloatBits(1, 1, 1, layer.getOpacity());
+		float tileWidth = layer.getTileWidth() * unitScale;
+		float tileHeight = layer.getTileHeight() * unitScale;
+
+		for (int x = column * CHUNK_SIZE, n = Math.min(x + CHUNK_SIZE, layer.getWidth()); x < n; x++) {
+			for (int y = row * CHUNK_SIZE, nn = Math.min(y + CHUNK_SIZE, layer.getHeight()); y < nn; y++) {
+				Cell cell = layer.getCell(x, y);
+				if (cell == null || cell.getTile() == null) continue;
+
+				TextureRegion region = cell.getTile().getTextureRegion();
+				float x1 = x * tileWidth;
+				float y1 = y * tileHeight;
+				float x2 = x1 + region.getRegionWidth() * unitScale;
+				float y2 = y1 + region.getRegionHeight() * unitScale;
+				float u1 = region.getU();
+				float v1 = region.getV2();
+				float u2 = region.getU2();
+				float v2 = region.getV();
+
+				vertices[X1] = x1;
+				vertices[Y1] = y1;
+				vertices[C1] = color;
+				vertices[U1] = u1;
+				vertices[V1] = v1;
+
+				vertices[X2] = x1;
+				vertices[Y2] = y2;
+				vertices[C2] = color;
+				vertices[U2] = u1;
+				vertices[V2] = v2;
+
+				vertices[X3] = x2;
+				vertices[Y3] = y2;
+				vertices[C3] = color;
+				vertices[U3] = u2;
+				vertices[V3] = v2;
+
+				vertices[X4] = x2;
+				vertices[Y4] = y1;
+				vertices[C4] = color;
+				vertices[U4] = u2;
+				vertices[V4] = v1;
+
+				if (cell.getFlipHorizontally()) {
+					swap(U1, U3);
+					swap(U2, U4);
+				}
+				if (cell.getFlipVertically()) {
+					swap(V1, V3);
+					swap(V2, V4);
+				}
+				switch (cell.getRotation()) {
+				case Cell.ROTATE_90:
+					rotate(V1, V2, V3, V4);
+					rotate(U1, U2, U3, U4);
+					break;
+				case Cell.ROTATE_180:
+					swap(U1, U3);
+					swap(U2, U4);
+					swap(V1, V3);
+					swap(V2, V4);
+					break;
+				case Cell.ROTATE_270:
+					rotate(V1, V4, V3, V2);
+					rotate(U1, U4, U3, U2);
+					break;
+				}
+
+				Texture texture = region.getTexture();
+				int chunk = column * chunkRows + row;
+				if (chunkFirstTextures[chunk] == null) chunkFirstTextures[chunk] = texture;
+				else if (texture != chunkLastTextures[chunk]) chunkTextureSwitches[chunk]++;
+				chunkLastTextures[chunk] = texture;
+				cache.add(texture, vertices, 0, vertices.length);
+			}
+		}
+	}
+
+	private void swap(int a, int b) {
+		float temp = vertices[a];
+		vertices[a] = vertices[b];
+		vertices[b] = temp;
+	}
+
+	/**
+	 * Moves the values at b, c and d to a, b and c, and the value at a to d.
+	 */
+	private void rotate(int a, int b, int c, int d) {
+		float temp = vertices[a];
+		vertices[a] = vertices[b];
+		vertices[b] = vertices[c];
+		vertices[c] = vertices[d];
+		vertices[d] = temp;
+	}
+
+	/**
+	 * Number of draw calls the last render() made.
+	 */
+	public int getRenderCalls() {
+		return cache.renderCalls;
+	}
+
+	/**
+	 * Number of times the last render() bound a texture other than the one it bound before, the first bind included.
+	 */
+	public int getTextureSwitches() {
+		return textureSwitches;
+	}
+
+	/**
+	 * Texture the last render() bound last, or null if it drew nothing.
+	 */
+	public Texture getLastTexture() {
+		return lastTexture;
+	}
+
+	@Override
+	public void dispose() {
+		cache.dispose();
+	}
+}
@@ -0,0 +1,404 @@
+package sk.jmisur.pidgin.core;
+
+/**
+ * Copyright 2011 David Kirchner dpk@dpk.net Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the
+ * License. Source: http://dpk.net/2011/05/08/libgdx-box2d-tiled-maps-full-working-example-part-2/
+ */
+
+import java.util.ArrayList;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.LongMap;
+
+/**
+ * Builds the collision edges of a tiled map: the per-tile line segments of every placed tile, on any tile layer, and
+ * the shapes drawn on object layers are moved to map coordinates and merged into as few, as long edges as possible.
+ * Used by TiledMapHelper at level load, and by the collision compiler at build time.
+ */
+public class CollisionBuilder {
+
+	/**
+	 * Header of a compiled collision file. It is followed by the map width and height in pixels as ints, the chunk
+	 * width in pixels as a float, the number of chunks, the index of the first edge value of every chunk and the end of
+	 * the last chunk as ints, and x1, y1, x2, y2 of every edge in map pixels as floats, chunk after chunk, see
+	 * CollisionData. All values are big endian.
+	 */
+	public static final int COMPILED_MAGIC = 0x50454447;
+	public static final int COMPILED_VERSION = 2;
+
+	private final int tileWidth;
+	private final int tileHeight;
+
+	/**
+	 * The per-tile segments, indexed directly by tile id. Ids are small and dense, so this is cheaper than a map for
+	 * the lookup done for every cell of every layer.
+	 */
+	private LineSegment[][] tileCollisionJoints = new LineSegment[0][];
+	private final ArrayList<LineSegment> collisionLineSegments = new ArrayList<LineSegment>();
+	private final LineSegmentIndex index = new LineSegmentIndex();
+	private int edgeCount;
+
+	public CollisionBuilder(int tileWidth, int tileHeight) {
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+	}
+
+	/**
+	 * Reads the collision boundaries that should be set per-tile. The text contains lines in this format (one line per
+	 * type of tile): tileNumber XxY,XxY XxY,XxY Ex: 3 0x0,31x0 ... 4 0x0,29x0 29x0,29x31 For a 32x32 tileset, the
+	 * above describes one line segment for tile #3 and two for tile #4. Tile #3 has a line segment across the top. Tile
+	 * #1 has a line segment across most of the top and a line segment from the top to the bottom, 30 pixels in.
+	 * 
+	 * @param collisions the contents of a .collision file
+	 */
+	public void readTileCollisions(String collisions) {
+		String lines[] = collisions.split("\\r?\\n");
+
+		for (int n = 0; n < lines.length; n++) {
+			String cols[] = lines[n].split(" ");
+			int tileNo = Integer.parseInt(cols[0]);
+
+			LineSegment tmp[] = new LineSegment[cols.length - 1];
+
+			for (int m = 1; m < cols.length; m++) {
+				String coords[] = cols[m].split(",");
+
+				String start[] = coords[0].split("x");
+				String end[] = coords[1].split("x");
+
+				tmp[m - 1] = new LineSegment(Integer.parseInt(start[0]), Integer.parseInt(start[1]), Integer.parseInt(end[0]), Integer.parseInt(end[1]));
+			}
+
+			if (tileNo >= tileCollisionJoints.length) {
+				LineSegment[][] grown = new LineSegment[tileNo + 1][];
+				System.arraycopy(tileCollisionJoints, 0, grown, 0, tileCollisionJoints.length);
+				tileCollisionJoints = grown;
+			}
+			tileCollisionJoints[tileNo] = tmp;
+		}
+	}
+
+	/**
+	 * Adds the collision segments of a tile placed on the map. Tiles without collision boundaries, like the "undefined"
+	 * empty space tile 0, add nothing.
+	 * 
+	 * @param tileType the tile id
+	 * @param x the column of the tile, from the left
+	 * @param y the row of the tile, from the bottom
+	 */
+	public void addTile(int tileType, int x, int y) {
+		if (tileType < 0 || tileType >= tileCollisionJoints.length) return;
+		LineSegment[] tileSegments = tileCollisionJoints[tileType];
+		if (tileSegments == null) return;
+
+		for (int n = 0; n < tileSegments.length; n++) {
+			LineSegment lineSeg = tileSegments[n];
+
+			addOrExtendCollisionLineSegment(x * tileWidth + lineSeg.x1, y * tileHeight - lineSeg.y1 + tileHeight, x * tileWidth + lineSeg.x2, y
+					* tileHeight - lineSeg.y2 + tileHeight);
+		}
+	}
+
+	/**
+	 * Adds the edges of a polyline or polygon drawn on an object layer. Object coordinates aren't bound to the pixel
+	 * grid, so they are rounded to whole pixels.
+	 * 
+	 * @param vertices x and y of every vertex, in map pixels
+	 * @param closed true to also connect the last vertex to the first, as for polygons
+	 */
+	public void addPolyline(float[] vertices, boolean closed) {
+		for (int i = 0; i + 3 < vertices.length; i += 2) {
+			addOrExtendCollisionLineSegment(Math.round(vertices[i]), Math.round(vertices[i + 1]), Math.round(vertices[i + 2]), Math.round(vertices[i + 3]));
+		}
+		if (closed && vertices.length >= 6) {
+			int last = vertices.length - 2;
+			addOrExtendCollisionLineSegment(Math.round(vertices[last]), Math.round(vertices[last + 1]), Math.round(vertices[0]), Math.round(vertices[1]));
+		}
+	}
+
+	/**
+	 * Adds the outline of a rectangle drawn on an object layer.
+	 * 
+	 * @param x the left side, in map pixels
+	 * @param y the bottom side, in map pixels
+	 * @param width
+	 * @param height
+	 */
+	public void addRectangle(float x, float y, float width, float height) {
+		addPolyline(new float[] { x, y, x + width, y, x + width, y + height, x, y + height }, true);
+	}
+
+	/**
+	 * Returns the merged edges, as x1, y1, x2, y2 of every edge in map pixels.
+	 */
+	public int[] getEdges() {
+		int[] edges = new int[edgeCount * 4];
+		int i = 0;
+		for (LineSegment lineSegment : collisionLineSegments) {
+			if (lineSegment.merged) continue;
+			edges[i++] = lineSegment.x1;
+			edges[i++] = lineSegment.y1;
+			edges[i++] = lineSegment.x2;
+			edges[i++] = lineSegment.y2;
+		}
+		return edges;
+	}
+
+	/**
+	 * This is a helper function that makes calls that will attempt to extend one of the line segments already tracked
+	 * by the builder, if possible. The goal is to have as few line segments as possible. Ex: If you have a line
+	 * segment in the system that is from 1x1 to 3x3 and this function is called for a line that is 4x4 to 9x9, rather
+	 * than add a whole new line segment to the list, the 1x1,3x3 line will be extended to 1x1,9x9. An extended segment
+	 * may now touch another collinear segment, in which case the two are merged as well. See also:
+	 * LineSegment.extendIfPossible.
+	 * 
+	 * @param lsx1 starting x of the new line segment
+	 * @param lsy1 starting y of the new line segment
+	 * @param lsx2 ending x of the new line segment
+	 * @param lsy2 ending y of the new line segment
+	 */
+	public void addOrExtendCollisionLineSegment(int lsx1, int lsy1, int lsx2, int lsy2) {
+		LineSegment line = new LineSegment(lsx1, lsy1, lsx2, lsy2);
+
+		/**
+		 * A single point is no edge at all, and box2d doesn't accept zero length edges.
+		 */
+		if (line.isPoint()) return;
+
+		LineSegment extended = index.extendIfPossible(line);
+		if (extended == null) {
+			line.id = collisionLineSegments.size();
+			collisionLineSegments.add(line);
+			edgeCount++;
+			index.add(line);
+			return;
+		}
+
+		while (true) {
+			LineSegment neighbour = index.findExtendable(extended, extended);
+			if (neighbour == null) break;
+
+			index.remove(neighbour);
+			index.remove(extended);
+			extended.extendIfPossible(neighbour);
+			neighbour.merged = true;
+			edgeCount--;
+			index.add(extended);
+		}
+	}
+
+	/**
+	 * Finds the line segments that could be extended by a new one without looking at all of them. Map coordinates are
+	 * whole pixels, so every end point is hashed into a one pixel cell. Segments can only be extended by a line whose
+	 * end points are at most one pixel away from theirs, so only the cells around the new line's end points have to be
+	 * searched.
+	 */
+	static private class LineSegmentIndex {
+
+		private final LongMap<Array<LineSegment>> cells = new LongMap<Array<LineSegment>>();
+		private final Array<LineSegment> candidates = new Array<LineSegment>();
+
+		public void add(LineSegment lineSegment) {
+			addEndPoint(lineSegment.x1, lineSegment.y1, lineSegment);
+			addEndPoint(lineSegment.x2, lineSegment.y2, lineSegment);
+		}
+
+		public void remove(LineSegment lineSegment) {
+			removeEndPoint(lineSegment.x1, lineSegment.y1, lineSegment);
+			removeEndPoint(lineSegment.x2, lineSegment.y2, lineSegment);
+		}
+
+		/**
+		 * Extends one of the indexed line segments by the given one, if possible. Like a scan over the whole list
+		 * would, this picks the oldest segment that can be extended.
+		 * 
+		 * @return LineSegment the extended segment, or null if none could be extended.
+		 */
+		public LineSegment extendIfPossible(LineSegment lineSegment) {
+			LineSegment best = findExtendable(lineSegment, null);
+			if (best == null) return null;
+
+			remove(best);
+			best.extendIfPossible(lineSegment);
+			add(best);
+			return best;
+		}
+
+		/**
+		 * Finds the oldest indexed segment, other than the excluded one, that can be extended by the given segment.
+		 */
+		public LineSegment findExtendable(LineSegment lineSegment, LineSegment exclude) {
+			candidates.clear();
+			collectCandidates(lineSegment.x1, lineSegment.y1);
+			collectCandidates(lineSegment.x2, lineSegment.y2);
+
+			LineSegment best = null;
+			for (int i = 0; i < candidates.size; i++) {
+				LineSegment candidate = candidates.get(i);
+				if (candidate == exclude) continue;
+				if ((best == null || candidate.id < best.id) && candidate.canExtend(lineSegment)) best = candidate;
+			}
+			return best;
+		}
+
+		private void collectCandidates(int x, int y) {
+			for (int dx = -1; dx <= 1; dx++) {
+				for (int dy = -1; dy <= 1; dy++) {
+					Array<LineSegment> cell = cells.get(key(x + dx, y + dy));
+					if (cell != null) candidates.addAll(cell);
+				}
+			}
+		}
+
+		private void addEndPoint(int x, int y, LineSegment lineSegment) {
+			long key = key(x, y);
+			Array<LineSegment> cell = cells.get(key);
+			if (cell == null) {
+				cell = new Array<LineSegment>(2);
+				cells.put(key, cell);
+			}
+			cell.add(lineSegment);
+		}
+
+		private void removeEndPoint(int x, int y, LineSegment lineSegment) {
+			Array<LineSegment> cell = cells.get(key(x, y));
+			if (cell != null) cell.removeValue(lineSegment, true);
+		}
+
+		private long key(int x, int y) {
+			return ((long) x << 32) | (y & 0xffffffffL);
+		}
+	}
+
+	/**
+	 * Describes the start and end points of a line segment and contains a helper method useful for extending line
+	 * segments. All coordinates are whole pixels, so all the geometry is done exactly in integers.
+	 */
+	static private class LineSegment {
+
+		/**
+		 * The "start" and the "end" of the line. Start and end are misnomers, these are just the two ends of the line.
+		 */
+		private int x1, y1;
+		private int x2, y2;
+
+		/**
+		 * Position of this segment in the list of collected segments, so the index can prefer older segments.
+		 */
+		private int id;
+
+		/**
+		 * Set when this segment was merged into another one and should be left out.
+		 */
+		private boolean merged;
+
+		/**
+		 * Construct a new LineSegment with the specified coordinates.
+		 * 
+		 * @param x1
+		 * @param y1
+		 * @param x2
+		 * @param y2
+		 */
+		public LineSegment(int x1, int y1, int x2, int y2) {
+			this.x1 = x1;
+			this.y1 = y1;
+			this.x2 = x2;
+			this.y2 = y2;
+		}
+
+		public boolean isPoint() {
+			return x1 == x2 && y1 == y2;
+		}
+
+		/**
+		 * Determine if the requested line could be tacked on to this line with no kinks or gaps. If it can, the current
+		 * LineSegment will be extended to cover both lines.
+		 * 
+		 * @param lineSegment
+		 * @return boolean true if line was extended, false if not.
+		 */
+		public boolean extendIfPossible(LineSegment lineSegment) {
+			if (!canExtend(lineSegment)) return false;
+
+			/**
+			 * Both lines lie on the same line, so of the four points, keep the two that are furthest apart along this
+			 * line's direction. This works no matter which way the requested line points, or whether the lines overlap.
+			 */
+			long dx = x2 - x1;
+			long dy = y2 - y1;
+			long min = 0;
+			long max = dx * dx + dy * dy;
+			int minX = x1, minY = y1, maxX = x2, maxY = y2;
+
+			long projection = (lineSegment.x1 - x1) * dx + (lineSegment.y1 - y1) * dy;
+			if (projection < min) {
+				min = projection;
+				minX = lineSegment.x1;
+				minY = lineSegment.y1;
+			} else if (projection > max) {
+				max = projection;
+				maxX = lineSegment.x1;
+				maxY = lineSegment.y1;
+			}
+
+			projection = (lineSegment.x2 - x1) * dx + (lineSegment.y2 - y1) * dy;
+			if (projection < min) {
+				minX = lineSegment.x2;
+				minY = lineSegment.y2;
+			} else if (projection > max) {
+				maxX = lineSegment.x2;
+				maxY = lineSegment.y2;
+			}
+
+			x1 = minX;
+			y1 = minY;
+			x2 = maxX;
+			y2 = maxY;
+			return true;
+		}
+
+		/**
+		 * Determine if the requested line could be tacked on to this line, without changing anything. First, both
+		 * lines must lie on the same line, in either direction: the cross products of this line's direction with the
+		 * requested line's direction and with the offset to its start are both zero. Second, one of the ends of this
+		 * line must be adjacent to one of the ends of the requested line, so at most 1 pixel away in both x and y.
+		 * 
+		 * @param lineSegment
+		 * @return boolean true if line can be extended, false if not.
+		 */
+		public boolean canExtend(LineSegment lineSegment) {
+			if (isPoint() || lineSegment.isPoint()) return false;
+
+			long dx = x2 - x1;
+			long dy = y2 - y1;
+			if (dx * (lineSegment.y2 - lineSegment.y1) - dy * (lineSegment.x2 - lineSegment.x1) != 0) return false;
+			// Parallel lines that are apart sideways, even by a pixel, would merge into a slanted line.
+			if (dx * (lineSegment.y1 - y1) - dy * (lineSegment.x1 - x1) != 0) return false;
+
+			return adjacent(x1, y1, lineSegment.x1, lineSegment.y1) || adjacent(x2, y2, lineSegment.x1, lineSegment.y1)
+					|| adjacent(x2, y2, lineSegment.x2, lineSegment.y2) || adjacent(x1, y1, lineSegment.x2, lineSegment.y2);
+		}
+
+		private boolean adjacent(int ax, int ay, int bx, int by) {
+			int dx = ax - bx;
+			int dy = ay - by;
+			return dx * dx + dy * dy <= 2;
+		}
+
+		/**
+		 * Returns a pretty description of the LineSegment.
+		 * 
+		 * @return String
+		 */
+		@Override
+		public String toString() {
+			return "[" + x1 + "x" + y1 + "] -> [" + x2 + "x" + y2 + "]";
+		}
+	}
+
+}
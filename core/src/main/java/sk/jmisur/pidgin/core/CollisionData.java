@@ -0,0 +1,208 @@
+package sk.jmisur.pidgin.core;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.FloatArray;
+
+/**
+ * The merged static collision edges of a map, before any bodies are created for them, cut into chunks of tile
+ * columns. Built off the render thread by CollisionDataLoader, or compiled by CollisionCompiler, and streamed into
+ * bodies chunk by chunk by TiledMapHelper.updateCollisionChunks. The edges of a compiled file are read where the file
+ * is mapped, so a level's collisions take no heap however long the map is.
+ */
+public class CollisionData {
+
+	/**
+	 * Tile columns per chunk that the game streams its collisions in, and that CollisionCompiler cuts the edges for.
+	 */
+	public static final int CHUNK_COLUMNS = 4;
+
+	/**
+	 * Size of the map in pixels.
+	 */
+	public final int width;
+	public final int height;
+
+	/**
+	 * Width of a chunk in map pixels.
+	 */
+	public final float chunkWidth;
+
+	/**
+	 * Index in edges of the first value of every chunk, and of the end of the last chunk.
+	 */
+	private final IntBuffer chunkStarts;
+
+	/**
+	 * x1, y1, x2, y2 of every edge in map pixels, the map boundary included, chunk after chunk. Edges crossing a chunk
+	 * border are cut at the border, so every chunk holds only its own strip of the map. Read with the absolute getters
+	 * only, so the buffer can be read from several threads.
+	 */
+	private final FloatBuffer edges;
+
+	private CollisionData(int width, int height, float chunkWidth, IntBuffer chunkStarts, FloatBuffer edges) {
+		this.width = width;
+		this.height = height;
+		this.chunkWidth = chunkWidth;
+		this.chunkStarts = chunkStarts;
+		this.edges = edges;
+	}
+
+	/**
+	 * Cuts the merged edges of a map, x1, y1, x2, y2 each in map pixels, and a boundary around the entire map into
+	 * chunks of the given width. A chunk width of the map width or more makes a single chunk.
+	 */
+	public static CollisionData chunk(int width, int height, int[] edges, float chunkWidth) {
+		Chunker chunker = new Chunker(width, chunkWidth);
+		for (int i = 0; i < edges.length; i += 4)
+			chunker.add(edges[i], edges[i + 1], edges[i + 2], edges[i + 3]);
+
+		/**
+		 * Drawing a boundary around the entire map. We can't use a box because then the world objects would be inside
+		 * and the physics engine would try to push them out.
+		 */
+		chunker.add(0, 0, width, 0);
+		chunker.add(0, height, width, height);
+		chunker.add(0, 0, 0, height);
+		chunker.add(width, 0, width, height);
+		return chunker.build(height);
+	}
+
+	/**
+	 * Returns the same edges cut into chunks of the given width, or this if they already are.
+	 */
+	public CollisionData rechunk(float chunkWidth) {
+		if (chunkWidth == this.chunkWidth) return this;
+		Chunker chunker = new Chunker(width, chunkWidth);
+		for (int i = 0, n = getChunkEnd(getChunkCount() - 1); i < n; i += 4)
+			chunker.add(edges.get(i), edges.get(i + 1), edges.get(i + 2), edges.get(i + 3));
+		return chunker.build(height);
+	}
+
+	/**
+	 * Reads a collision file compiled by CollisionCompiler, in the format described at
+	 * CollisionBuilder.COMPILED_MAGIC. The edges are not copied, they are read from the file as it is mapped into
+	 * memory on the backends that can, see MappedFiles.
+	 */
+	public static CollisionData readCompiled(FileHandle compiledFile) {
+		ByteBuffer buffer = MappedFiles.read(compiledFile);
+		if (buffer.getInt() != CollisionBuilder.COMPILED_MAGIC || buffer.getInt() != CollisionBuilder.COMPILED_VERSION) {
+			throw new IllegalStateException("Not a compiled collision file: " + compiledFile);
+		}
+
+		int width = buffer.getInt();
+		int height = buffer.getInt();
+		float chunkWidth = buffer.getFloat();
+		int chunkCount = buffer.getInt();
+		IntBuffer chunkStarts = buffer.asIntBuffer();
+		if (chunkCount < 1 || chunkStarts.remaining() <= chunkCount) throw new IllegalStateException("Truncated compiled collision file: " + compiledFile);
+		chunkStarts.limit(chunkCount + 1);
+		buffer.position(buffer.position() + (chunkCount + 1) * 4);
+		FloatBuffer edges = buffer.asFloatBuffer();
+		if (edges.remaining() < chunkStarts.get(chunkCount)) throw new IllegalStateException("Truncated compiled collision file: " + compiledFile);
+		edges.limit(chunkStarts.get(chunkCount));
+		return new CollisionData(width, height, chunkWidth, chunkStarts, edges);
+	}
+
+	public int getChunkCount() {
+		return chunkStarts.limit() - 1;
+	}
+
+	/**
+	 * Index of the first value of the chunk's edges, see getEdge.
+	 */
+	public int getChunkStart(int chunk) {
+		return chunkStarts.get(chunk);
+	}
+
+	/**
+	 * Index after the last value of the chunk's edges, see getEdge.
+	 */
+	public int getChunkEnd(int chunk) {
+		return chunkStarts.get(chunk + 1);
+	}
+
+	/**
+	 * A value of the edges, x1, y1, x2, y2 of every edge in map pixels.
+	 */
+	public float getEdge(int index) {
+		return edges.get(index);
+	}
+
+	/**
+	 * Returns the chunk at the given x in map pixels, clamped to the map.
+	 */
+	public int chunkAt(float x) {
+		return Math.max(0, Math.min(getChunkCount() - 1, (int) (x / chunkWidth)));
+	}
+
+	/**
+	 * Collects the edges of every chunk, then lays them out chunk after chunk.
+	 */
+	static private class Chunker {
+
+		private final int width;
+		private final float chunkWidth;
+		private final FloatArray[] chunks;
+
+		Chunker(int width, float chunkWidth) {
+			this.width = width;
+			this.chunkWidth = chunkWidth;
+			chunks = new FloatArray[Math.max(1, (int) Math.ceil(width / chunkWidth))];
+			for (int i = 0; i < chunks.length; i++)
+				chunks[i] = new FloatArray();
+		}
+
+		void add(float x1, float y1, float x2, float y2) {
+			if (x1 > x2) {
+				float tmp = x1;
+				x1 = x2;
+				x2 = tmp;
+				tmp = y1;
+				y1 = y2;
+				y2 = tmp;
+			}
+
+			int first = chunkAt(x1);
+			int last = chunkAt(x2);
+			if (first == last) {
+				addEdge(first, x1, y1, x2, y2);
+				return;
+			}
+
+			for (int chunk = first; chunk <= last; chunk++) {
+				float left = Math.max(x1, chunk * chunkWidth);
+				float right = Math.min(x2, (chunk + 1) * chunkWidth);
+				// an edge merely touching the chunk border leaves nothing but a point in the next chunk
+				if (right - left < 0.01f) continue;
+				float slope = (y2 - y1) / (x2 - x1);
+				addEdge(chunk, left, y1 + (left - x1) * slope, right, y1 + (right - x1) * slope);
+			}
+		}
+
+		private int chunkAt(float x) {
+			return Math.max(0, Math.min(chunks.length - 1, (int) (x / chunkWidth)));
+		}
+
+		private void addEdge(int chunk, float x1, float y1, float x2, float y2) {
+			FloatArray edges = chunks[chunk];
+			edges.add(x1);
+			edges.add(y1);
+			edges.add(x2);
+			edges.add(y2);
+		}
+
+		CollisionData build(int height) {
+			int[] starts = new int[chunks.length + 1];
+			for (int i = 0; i < chunks.length; i++)
+				starts[i + 1] = starts[i] + chunks[i].size;
+			float[] edges = new float[starts[chunks.length]];
+			for (int i = 0; i < chunks.length; i++)
+				System.arraycopy(chunks[i].items, 0, edges, starts[i], chunks[i].size);
+			return new CollisionData(width, height, chunkWidth, IntBuffer.wrap(starts), FloatBuffer.wrap(edges));
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package sk.jmisur.pidgin.core;
+
+import com.badlogic.gdx.assets.AssetDescriptor;
+import com.badlogic.gdx.assets.AssetLoaderParameters;
+import com.badlogic.gdx.assets.AssetManager;
+import com.badlogic.gdx.assets.loaders.AsynchronousAssetLoader;
+import com.badlogic.gdx.assets.loaders.FileHandleResolver;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * Loads a map's CollisionData with the AssetManager, reading and merging the edges on the loader thread. A file ending
+ * in COMPILED_SUFFIX is read as compiled by CollisionCompiler. Any other file is the tile collision file of the map
+ * given in the parameters, which is loaded first and expanded like TiledMapHelper.loadCollisions does.
+ */
+public class CollisionDataLoader extends AsynchronousAssetLoader<CollisionData, CollisionDataLoader.Parameters> {
+
+	public static final String COMPILED_SUFFIX = ".edges";
+
+	private CollisionData data;
+
+	public CollisionDataLoader(FileHandleResolver resolver) {
+		super(resolver);
+	}
+
+	@Override
+	public Array<AssetDescriptor> getDependencies(String fileName, FileHandle file, Parameters parameter) {
+		if (fileName.endsWith(COMPILED_SUFFIX)) return null;
+		if (parameter == null || parameter.mapFile == null) throw new IllegalArgumentException("The map of the tile collision file is needed: " + fileName);
+		Array<AssetDescriptor> dependencies = new Array<AssetDescriptor>();
+		dependencies.add(new AssetDescriptor(parameter.mapFile, TiledMap.class));
+		return dependencies;
+	}
+
+	@Override
+	public void loadAsync(AssetManager manager, String fileName, FileHandle file, Parameters parameter) {
+		if (fileName.endsWith(COMPILED_SUFFIX)) {
+			data = CollisionData.readCompiled(file);
+		} else {
+			TiledMap map = manager.get(parameter.mapFile, TiledMap.class);
+			data = TiledMapHelper.buildCollisions(map, new MapGeometry(map.getProperties()), file.readString());
+		}
+	}
+
+	@Override
+	public CollisionData loadSync(AssetManager manager, String fileName, FileHandle file, Parameters parameter) {
+		CollisionData loaded = data;
+		data = null;
+		return loaded;
+	}
+
+	static public class Parameters extends AssetLoaderParameters<CollisionData> {
+
+		/**
+		 * The tmx file of the map, for tile collision files.
+		 */
+		public String mapFile;
+	}
+}
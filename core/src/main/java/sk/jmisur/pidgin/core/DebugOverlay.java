@@ -0,0 +1,174 @@
+package sk.jmisur.pidgin.core;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL10;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer.ShapeType;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.BodyDef.BodyType;
+import com.badlogic.gdx.physics.box2d.CircleShape;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.PolygonShape;
+import com.badlogic.gdx.physics.box2d.Shape;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+
+/**
+ * Draws the collision geometry over the game, in place of Box2DDebugRenderer. It is off until toggled, and costs
+ * nothing while off: the GL resources are only created the first time it is shown. The static collision edges don't
+ * change, so they are uploaded once into a line mesh. Only the dynamic bodies are walked per frame.
+ */
+public class DebugOverlay implements Disposable {
+
+	private static final Color STATIC_COLOR = new Color(0.5f, 0.9f, 0.5f, 1);
+	private static final Color DYNAMIC_COLOR = new Color(0.9f, 0.7f, 0.7f, 1);
+
+	private static final String VERTEX_SHADER = "attribute vec4 " + ShaderProgram.POSITION_ATTRIBUTE + ";\n" //
+			+ "uniform mat4 u_projTrans;\n" //
+			+ "void main() {\n" //
+			+ "  gl_Position = u_projTrans * " + ShaderProgram.POSITION_ATTRIBUTE + ";\n" //
+			+ "}\n";
+	private static final String FRAGMENT_SHADER = "#ifdef GL_ES\n" //
+			+ "precision mediump float;\n" //
+			+ "#endif\n" //
+			+ "uniform vec4 u_color;\n" //
+			+ "void main() {\n" //
+			+ "  gl_FragColor = u_color;\n" //
+			+ "}\n";
+
+	private boolean enabled;
+
+	/**
+	 * The static edges, until they are uploaded into the mesh.
+	 */
+	private CollisionData staticEdges;
+	private Mesh staticMesh;
+	private ShaderProgram shader;
+	private ShapeRenderer shapeRenderer;
+
+	private final Matrix4 matrix = new Matrix4();
+	private final Array<Body> bodies = new Array<Body>();
+	private final Vector2 vertex = new Vector2();
+	private final Vector2 firstVertex = new Vector2();
+	private final Vector2 lastVertex = new Vector2();
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public void toggle() {
+		enabled = !enabled;
+	}
+
+	/**
+	 * Sets the static collision edges, in map pixels. Call after the collisions are loaded.
+	 */
+	public void setStaticEdges(CollisionData edges) {
+		if (staticMesh != null) {
+			staticMesh.dispose();
+			staticMesh = null;
+		}
+		staticEdges = edges;
+	}
+
+	/**
+	 * Draws the overlay if it is enabled. The camera's matrix is copied, never changed.
+	 *
+	 * @param mapScale the scale the map is drawn at, from map pixels to camera units
+	 * @param world the world to draw the dynamic bodies of, or null while it is stepped on another thread
+	 * @param pixelsPerMeter the scale from world meters to camera units
+	 */
+	public void render(Matrix4 cameraCombined, float mapScale, World world, float pixelsPerMeter) {
+		if (!enabled) return;
+
+		if (staticEdges != null || staticMesh != null) {
+			if (staticMesh == null) createStaticMesh();
+			matrix.set(cameraCombined).scale(mapScale, mapScale, 1);
+			renderStaticMesh();
+		}
+
+		if (world == null) return;
+		if (shapeRenderer == null) shapeRenderer = new ShapeRenderer();
+		matrix.set(cameraCombined).scale(pixelsPerMeter, pixelsPerMeter, 1);
+		shapeRenderer.setProjectionMatrix(matrix);
+		shapeRenderer.begin(ShapeType.Line);
+		shapeRenderer.setColor(DYNAMIC_COLOR);
+		world.getBodies(bodies);
+		for (int i = 0; i < bodies.size; i++) {
+			Body body = bodies.get(i);
+			if (body.getType() != BodyType.DynamicBody) continue;
+			for (Fixture fixture : body.getFixtureList())
+				renderFixture(body, fixture);
+		}
+		shapeRenderer.end();
+	}
+
+	private void createStaticMesh() {
+		float[] vertices = new float[staticEdges.getChunkEnd(staticEdges.getChunkCount() - 1)];
+		for (int i = 0; i < vertices.length; i++)
+			vertices[i] = staticEdges.getEdge(i);
+		staticEdges = null;
+		staticMesh = new Mesh(true, vertices.length / 2, 0, new VertexAttribute(Usage.Position, 2, ShaderProgram.POSITION_ATTRIBUTE));
+		staticMesh.setVertices(vertices);
+		if (Gdx.graphics.isGL20Available()) {
+			shader = new ShaderProgram(VERTEX_SHADER, FRAGMENT_SHADER);
+			if (!shader.isCompiled()) throw new IllegalStateException("Debug overlay shader: " + shader.getLog());
+		}
+	}
+
+	private void renderStaticMesh() {
+		if (shader != null) {
+			shader.begin();
+			shader.setUniformMatrix("u_projTrans", matrix);
+			shader.setUniformf("u_color", STATIC_COLOR.r, STATIC_COLOR.g, STATIC_COLOR.b, STATIC_COLOR.a);
+			staticMesh.render(shader, GL10.GL_LINES);
+			shader.end();
+		} else {
+			GL10 gl = Gdx.gl10;
+			gl.glMatrixMode(GL10.GL_PROJECTION);
+			gl.glLoadMatrixf(matrix.val, 0);
+			gl.glMatrixMode(GL10.GL_MODELVIEW);
+			gl.glLoadIdentity();
+			gl.glColor4f(STATIC_COLOR.r, STATIC_COLOR.g, STATIC_COLOR.b, STATIC_COLOR.a);
+			staticMesh.render(GL10.GL_LINES);
+			gl.glColor4f(1, 1, 1, 1);
+		}
+	}
+
+	private void renderFixture(Body body, Fixture fixture) {
+		Shape shape = fixture.getShape();
+		if (shape instanceof PolygonShape) {
+			PolygonShape polygon = (PolygonShape) shape;
+			for (int i = 0, n = polygon.getVertexCount(); i < n; i++) {
+				polygon.getVertex(i, vertex);
+				body.getTransform().mul(vertex);
+				if (i == 0) firstVertex.set(vertex);
+				else shapeRenderer.line(lastVertex.x, lastVertex.y, vertex.x, vertex.y);
+				lastVertex.set(vertex);
+			}
+			shapeRenderer.line(lastVertex.x, lastVertex.y, firstVertex.x, firstVertex.y);
+		} else if (shape instanceof CircleShape) {
+			Vector2 center = body.getTransform().mul(vertex.set(((CircleShape) shape).getPosition()));
+			shapeRenderer.circle(center.x, center.y, shape.getRadius(), 16);
+		}
+	}
+
+	@Override
+	public void dispose() {
+		if (staticMesh != null) staticMesh.dispose();
+		if (shader != null) shader.dispose();
+		if (shapeRenderer != null) shapeRenderer.dispose();
+	}
+}
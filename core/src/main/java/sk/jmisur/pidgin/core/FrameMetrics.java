@@ -0,0 +1,109 @@
+package sk.jmisur.pidgin.core;
+
+import java.util.Arrays;
+
+import com.badlogic.gdx.utils.TimeUtils;
+
+/**
+ * Per-frame timings of the game loop stages and counts of what a frame did, kept for the last SAMPLES frames and
+ * reported through {@link Log#metric(String, float, float, float)} as percentiles every FLUSH_INTERVAL. Recording a
+ * frame only writes into preallocated arrays, so the metrics can stay on in release builds.
+ */
+public class FrameMetrics {
+
+	/**
+	 * Timed stages, see {@link #begin(int)} and {@link #end(int)}.
+	 */
+	public static final int INPUT = 0;
+	public static final int PHYSICS = 1;
+	public static final int CAMERA = 2;
+	public static final int MAP = 3;
+	public static final int SPRITES = 4;
+	public static final int FRAME = 5;
+
+	/**
+	 * Counted values, see {@link #count(int, int)}.
+	 */
+	public static final int BODIES = 6;
+	public static final int CONTACTS = 7;
+	/**
+	 * Render calls of the map's SpriteCache and the sprites' SpriteBatch.
+	 */
+	public static final int RENDER_CALLS = 8;
+	/**
+	 * Binds of a texture other than the one bound before it, counted apart from the render calls: SpriteCache and
+	 * SpriteBatch bind the texture for every render call, but only a switch to another texture changes GL state.
+	 */
+	public static final int TEXTURE_SWITCHES = 9;
+
+	private static final String[] NAMES = { "input_ms", "physics_ms", "camera_ms", "map_ms", "sprites_ms", "frame_ms", "bodies", "contacts",
+			"render_calls", "texture_switches" };
+	private static final int TIMINGS = FRAME + 1;
+
+	/**
+	 * Frames kept per metric. A flush interval's worth of frames at 60 fps fits, so every frame in between flushes is
+	 * counted.
+	 */
+	static final int SAMPLES = 256;
+	static final long FLUSH_INTERVAL = 4000000000L;
+
+	private final Log log;
+	private final long[][] samples = new long[NAMES.length][SAMPLES];
+	private final long[] sorted = new long[SAMPLES];
+	private final long[] starts = new long[TIMINGS];
+	private int next;
+	private int count;
+	private long lastFlush;
+
+	public FrameMetrics(Log log) {
+		this.log = log;
+		lastFlush = TimeUtils.nanoTime();
+	}
+
+	public void begin(int stage) {
+		starts[stage] = TimeUtils.nanoTime();
+	}
+
+	public void end(int stage) {
+		samples[stage][next] = TimeUtils.nanoTime() - starts[stage];
+	}
+
+	public void count(int counter, int value) {
+		samples[counter][next] = value;
+	}
+
+	/**
+	 * Moves on to the next frame, and reports the frames since the last report once FLUSH_INTERVAL has passed.
+	 */
+	public void endFrame() {
+		next = (next + 1) % SAMPLES;
+		if (count < SAMPLES) count++;
+
+		long now = TimeUtils.nanoTime();
+		if (now - lastFlush >= FLUSH_INTERVAL) {
+			flush();
+			lastFlush = now;
+		}
+	}
+
+	/**
+	 * Reports the p50, p95 and p99 of every metric over the frames since the last report, timings in milliseconds.
+	 */
+	public void flush() {
+		if (count == 0) return;
+		for (int i = 0; i < NAMES.length; i++) {
+			// The last count frames end just before next in the ring.
+			for (int ii = 0; ii < count; ii++)
+				sorted[ii] = samples[i][(next - count + ii + SAMPLES) % SAMPLES];
+			Arrays.sort(sorted, 0, count);
+			float scale = i < TIMINGS ? 1e-6f : 1;
+			log.metric(NAMES[i], percentile(0.5f) * scale, percentile(0.95f) * scale, percentile(0.99f) * scale);
+		}
+		count = 0;
+	}
+
+	private long percentile(float p) {
+		int rank = (int) Math.ceil(p * count);
+		return sorted[Math.max(rank, 1) - 1];
+	}
+}
@@ -0,0 +1,90 @@
+package sk.jmisur.pidgin.core;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.Input;
+
+/**
+ * Reads the buttons from the keys and the touches of Gdx.input, and takes the frame time as it is. The screen is split
+ * into touch areas: the right fifth jumps, the left fifth resets at the top, resets low below that and crouches in the
+ * bottom part.
+ */
+public class GdxInputSource implements InputSource {
+
+	private int buttons;
+	private float delta;
+
+	@Override
+	public boolean nextFrame(float delta) {
+		this.delta = delta;
+		buttons = readButtons();
+		return true;
+	}
+
+	@Override
+	public int getButtons() {
+		return buttons;
+	}
+
+	@Override
+	public float getDelta() {
+		return delta;
+	}
+
+	private int readButtons() {
+		int screenWidth = Gdx.graphics.getWidth();
+		int screenHeight = Gdx.graphics.getHeight();
+
+		int buttons = 0;
+		if (Gdx.input.isKeyPressed(Input.Keys.DPAD_RIGHT)) {
+			buttons |= Pidgin.MOVE_RIGHT;
+		}
+		if (Gdx.input.isKeyPressed(Input.Keys.DPAD_LEFT)) {
+			buttons |= Pidgin.MOVE_LEFT;
+		}
+		if (Gdx.input.isKeyPressed(Input.Keys.DPAD_UP)) {
+			buttons |= Pidgin.JUMP;
+		} else {
+			for (int i = 0; i < 2; i++) {
+				if (Gdx.input.isTouched(i) && Gdx.input.getX(i) > screenWidth * 0.8f) {
+					buttons |= Pidgin.JUMP;
+				}
+			}
+		}
+		if (Gdx.input.isKeyPressed(Input.Keys.DPAD_DOWN)) {
+			buttons |= Pidgin.CROUCH;
+		} else {
+			for (int i = 0; i < 2; i++) {
+				if (Gdx.input.isTouched(i) && Gdx.input.getX(i) < screenWidth * 0.2f && Gdx.input.getY(i) > screenHeight * 0.4) {
+					buttons |= Pidgin.CROUCH;
+				}
+			}
+		}
+		if (Gdx.input.isKeyPressed(Input.Keys.Q)) {
+			buttons |= Pidgin.RESET;
+		} else {
+			for (int i = 0; i < 2; i++) {
+				if (Gdx.input.isTouched(i) && Gdx.input.getX(i) < screenWidth * 0.2f && Gdx.input.getY(i) < screenHeight * 0.2) {
+					buttons |= Pidgin.RESET;
+				}
+				if (Gdx.input.isTouched(i) && Gdx.input.getX(i) < screenWidth * 0.2f && Gdx.input.getY(i) > screenHeight * 0.2
+						&& Gdx.input.getY(i) < screenHeight * 0.4) {
+					buttons |= Pidgin.RESET_LOW;
+				}
+			}
+		}
+
+		if (Gdx.input.isKeyPressed(Input.Keys.A)) {
+			buttons |= Pidgin.BACKOFF_X;
+		}
+		if (Gdx.input.isKeyPressed(Input.Keys.W)) {
+			buttons |= Pidgin.BACKOFF_Y;
+		}
+		if (Gdx.input.isKeyPressed(Input.Keys.M)) {
+			buttons |= Pidgin.TOGGLE_CONSTANT_MOVE;
+		}
+		if (Gdx.input.isKeyPressed(Input.Keys.D)) {
+			buttons |= Pidgin.DEBUG;
+		}
+		return buttons;
+	}
+}
@@ -0,0 +1,27 @@
+package sk.jmisur.pidgin.core;
+
+/**
+ * Where Pidgin takes its input from, one frame at a time. A frame is the mask of buttons held during it, see the button
+ * constants of Pidgin, and the time it advances the simulation by. GdxInputSource reads the keys and touches, the
+ * sources of sk.jmisur.pidgin.replay record them to a file and play them back.
+ */
+public interface InputSource {
+
+	/**
+	 * Moves on to the next frame.
+	 *
+	 * @param delta the time the last frame took, in seconds
+	 * @return false if there are no frames left
+	 */
+	boolean nextFrame(float delta);
+
+	/**
+	 * The buttons held during the current frame.
+	 */
+	int getButtons();
+
+	/**
+	 * The time the current frame advances the simulation by, in seconds.
+	 */
+	float getDelta();
+}
@@ -4,4 +4,10 @@ public interface Log {
 
 	void log(String string);
 
+	/**
+	 * Reports the percentiles of a frame metric collected by FrameMetrics, timings in milliseconds and counts as they
+	 * are.
+	 */
+	void metric(String name, float p50, float p95, float p99);
+
 }
@@ -0,0 +1,42 @@
+package sk.jmisur.pidgin.core;
+
+import com.badlogic.gdx.maps.MapProperties;
+
+/**
+ * The dimensions of a loaded map, read once from its properties. The map properties are a hash map of boxed values, so
+ * anything that needs the dimensions per frame or per tile should read them from here.
+ */
+public final class MapGeometry {
+
+	/**
+	 * Size of the map in tiles.
+	 */
+	public final int widthInTiles;
+	public final int heightInTiles;
+
+	/**
+	 * Size of a single tile in pixels.
+	 */
+	public final int tileWidth;
+	public final int tileHeight;
+
+	/**
+	 * Size of the map in pixels.
+	 */
+	public final int width;
+	public final int height;
+
+	public MapGeometry(int widthInTiles, int heightInTiles, int tileWidth, int tileHeight) {
+		this.widthInTiles = widthInTiles;
+		this.heightInTiles = heightInTiles;
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+		this.width = widthInTiles * tileWidth;
+		this.height = heightInTiles * tileHeight;
+	}
+
+	public MapGeometry(MapProperties properties) {
+		this(properties.get("width", Integer.class), properties.get("height", Integer.class), properties.get("tilewidth", Integer.class), properties
+				.get("tileheight", Integer.class));
+	}
+}
@@ -0,0 +1,41 @@
+package sk.jmisur.pidgin.core;
+
+import java.nio.ByteBuffer;
+
+import com.badlogic.gdx.files.FileHandle;
+
+/**
+ * Reads binary asset files, like the pack index and the compiled collisions, into byte buffers. The backends that have
+ * memory mapped files set a mapper, so the files are mapped instead of copied onto the heap. Without one, or for files
+ * the mapper can't map, the file is read whole. GWT has no file mapping, so this class only holds the hook.
+ */
+public class MappedFiles {
+
+	/**
+	 * Maps files into memory, set by the backends that can.
+	 */
+	public interface FileMapper {
+
+		/**
+		 * Returns the contents of the file mapped into memory, or null if the file can't be mapped and has to be read.
+		 */
+		ByteBuffer map(FileHandle file);
+	}
+
+	private static FileMapper mapper;
+
+	/**
+	 * Sets the mapper the files are mapped with, or null to read them.
+	 */
+	public static void setMapper(FileMapper mapper) {
+		MappedFiles.mapper = mapper;
+	}
+
+	/**
+	 * Returns the contents of the file, big endian, mapped if the mapper can map it and read otherwise.
+	 */
+	public static ByteBuffer read(FileHandle file) {
+		ByteBuffer mapped = mapper != null ? mapper.map(file) : null;
+		return mapped != null ? mapped : ByteBuffer.wrap(file.readBytes());
+	}
+}
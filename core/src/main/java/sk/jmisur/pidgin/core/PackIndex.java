@@ -0,0 +1,180 @@
+package sk.jmisur.pidgin.core;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+import com.badlogic.gdx.files.FileHandle;
+
+/**
+ * Binary index of a texture pack file, written next to it by the AtlasPacker as <code>pack.index</code>, see
+ * PackIndexWriter. Finding a region by name is a hash table probe into the index, instead of parsing the pack text up
+ * to the region.
+ * <p>
+ * All values are big endian ints, strings are a length and UTF-8 bytes. The header (magic, version, length of the pack
+ * file, its modification time as a long, page count, region count, table size) is followed by the pages (file name,
+ * byte offset and length of the page in the pack file), the hash table (offset of the first region with a name, or 0)
+ * and the regions (offset of the next region with the same name or 0, name, page, byte offset of the entry in the pack
+ * file, index, x, y, width, height, offset x and y, original width and height, rotate, position in the atlas).
+ */
+public class PackIndex {
+
+	public static final int MAGIC = 0x50494458;
+	public static final int VERSION = 3;
+
+	public static final int HEADER_SIZE = 32;
+
+	private final ByteBuffer buffer;
+	private final int packLength;
+	private final long packModified;
+	private final String[] pageNames;
+	private final int[] pageStarts;
+	private final int[] pageLengths;
+	private final int tableStart;
+	private final int tableMask;
+
+	/**
+	 * Maps the index file into memory if the backend can, otherwise reads it, see MappedFiles.
+	 * 
+	 * @throws IllegalStateException if the file is not a pack index of this version
+	 */
+	public PackIndex(FileHandle indexFile) {
+		this(MappedFiles.read(indexFile));
+	}
+
+	/**
+	 * @throws IllegalStateException if the buffer does not hold a pack index of this version
+	 */
+	public PackIndex(ByteBuffer buffer) {
+		this.buffer = buffer;
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+			throw new IllegalStateException("Not a pack index of version " + VERSION + ".");
+		packLength = buffer.getInt(8);
+		packModified = buffer.getLong(12);
+		int pageCount = buffer.getInt(20);
+		int tableSize = buffer.getInt(28);
+		tableMask = tableSize - 1;
+
+		pageNames = new String[pageCount];
+		pageStarts = new int[pageCount];
+		pageLengths = new int[pageCount];
+		int offset = HEADER_SIZE;
+		for (int i = 0; i < pageCount; i++) {
+			pageNames[i] = getString(offset);
+			offset += 4 + buffer.getInt(offset);
+			pageStarts[i] = buffer.getInt(offset);
+			pageLengths[i] = buffer.getInt(offset + 4);
+			offset += 8;
+		}
+		tableStart = offset;
+	}
+
+	/**
+	 * Tells whether the index was written for a pack file of the given length and modification time, without reading
+	 * the pack file. A modification time of 0, which the backends report for files in an APK or a jar, matches any.
+	 */
+	public boolean isIndexOf(long length, long modified) {
+		return length == packLength && (modified == 0 || modified == packModified);
+	}
+
+	/**
+	 * Returns the first region with the name, or null.
+	 */
+	public Region find(String name) {
+		return find(name, -1);
+	}
+
+	/**
+	 * Returns the region with the name and index, or null. An index of -1 matches any region with the name.
+	 */
+	public Region find(String name, int index) {
+		for (int slot = name.hashCode() & tableMask;; slot = (slot + 1) & tableMask) {
+			int offset = buffer.getInt(tableStart + slot * 4);
+			if (offset == 0) return null;
+			if (!getString(offset + 4).equals(name)) continue;
+			for (; offset != 0; offset = buffer.getInt(offset)) {
+				Region region = getRegion(offset);
+				if (index == -1 || region.index == index) return region;
+			}
+			return null;
+		}
+	}
+
+	public int getPageCount() {
+		return pageNames.length;
+	}
+
+	public String getPageName(int page) {
+		return pageNames[page];
+	}
+
+	/**
+	 * Byte offset of the page in the pack file, starting with the blank line before its file name.
+	 */
+	public int getPageStart(int page) {
+		return pageStarts[page];
+	}
+
+	/**
+	 * Length in bytes of the page in the pack file, up to the blank line before the next page.
+	 */
+	public int getPageLength(int page) {
+		return pageLengths[page];
+	}
+
+	private Region getRegion(int offset) {
+		Region region = new Region();
+		region.name = getString(offset + 4);
+		offset += 8 + buffer.getInt(offset + 4);
+		region.page = buffer.getInt(offset);
+		region.packOffset = buffer.getInt(offset + 4);
+		region.index = buffer.getInt(offset + 8);
+		region.x = buffer.getInt(offset + 12);
+		region.y = buffer.getInt(offset + 16);
+		region.width = buffer.getInt(offset + 20);
+		region.height = buffer.getInt(offset + 24);
+		region.offsetX = buffer.getInt(offset + 28);
+		region.offsetY = buffer.getInt(offset + 32);
+		region.originalWidth = buffer.getInt(offset + 36);
+		region.originalHeight = buffer.getInt(offset + 40);
+		region.rotate = buffer.getInt(offset + 44) != 0;
+		region.atlasIndex = buffer.getInt(offset + 48);
+		return region;
+	}
+
+	private String getString(int offset) {
+		byte[] bytes = new byte[buffer.getInt(offset)];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = buffer.get(offset + 4 + i);
+		try {
+			return new String(bytes, "UTF-8");
+		} catch (UnsupportedEncodingException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * A region as written in the pack file.
+	 */
+	public static class Region {
+
+		public String name;
+		/**
+		 * Page the region is on, see {@link PackIndex#getPageName(int)}.
+		 */
+		public int page;
+		/**
+		 * Byte offset of the region's entry in the pack file.
+		 */
+		public int packOffset;
+		public int index;
+		public int x, y, width, height;
+		public int offsetX, offsetY;
+		public int originalWidth, originalHeight;
+		public boolean rotate;
+		/**
+		 * Position of the region in TextureAtlas.getRegions(), which lists the regions stably sorted by index, those
+		 * without an index last.
+		 */
+		public int atlasIndex;
+	}
+}
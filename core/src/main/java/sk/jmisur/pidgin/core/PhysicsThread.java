@@ -0,0 +1,56 @@
+package sk.jmisur.pidgin.core;
+
+/**
+ * Steps the game's physics at a fixed rate on a thread of its own, off the render thread. The core can't create
+ * threads, as the GWT backend has none, so backends that have them pass an implementation to Pidgin, see
+ * sk.jmisur.pidgin.threads.SteppingThread. Without one, Pidgin steps the physics in render().
+ * <p>
+ * The render thread hands the input over with postInput and reads the simulation's state with readSnapshot. Neither
+ * blocks, and the render thread never touches the box2d world while the thread runs.
+ */
+public interface PhysicsThread {
+
+	/**
+	 * The part of the game that runs on the physics thread.
+	 */
+	public interface Simulation {
+
+		/**
+		 * Applies one frame of input, as posted by the render thread.
+		 */
+		void input(int buttons);
+
+		/**
+		 * Advances the world by one fixed step.
+		 */
+		void step();
+
+		/**
+		 * Writes the state the render thread draws from into the array.
+		 */
+		void snapshot(float[] state);
+	}
+
+	/**
+	 * Starts stepping the simulation every timeStep seconds. Everything the render thread did before is visible to the
+	 * simulation.
+	 */
+	void start(Simulation simulation, int stateSize, float timeStep);
+
+	/**
+	 * Queues a frame of input for the simulation. Called on the render thread once per frame.
+	 */
+	void postInput(int buttons);
+
+	/**
+	 * Copies the latest complete snapshot into the array. Called on the render thread.
+	 * 
+	 * @return the number of steps the snapshot was taken after, 0 if there is none yet
+	 */
+	int readSnapshot(float[] state);
+
+	/**
+	 * Stops stepping and waits for the step in progress to finish. The simulation may be started again.
+	 */
+	void stop();
+}
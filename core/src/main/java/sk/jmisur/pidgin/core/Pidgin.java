@@ -11,28 +11,90 @@ package sk.jmisur.pidgin.core;
 
 import com.badlogic.gdx.ApplicationListener;
 import com.badlogic.gdx.Gdx;
-import com.badlogic.gdx.Input;
+import com.badlogic.gdx.assets.loaders.TextureLoader.TextureParameter;
 import com.badlogic.gdx.graphics.GL10;
 import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.Texture.TextureFilter;
 import com.badlogic.gdx.graphics.g2d.Sprite;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer.ShapeType;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Body;
 import com.badlogic.gdx.physics.box2d.BodyDef;
-import com.badlogic.gdx.physics.box2d.Box2DDebugRenderer;
+import com.badlogic.gdx.physics.box2d.Fixture;
 import com.badlogic.gdx.physics.box2d.FixtureDef;
 import com.badlogic.gdx.physics.box2d.PolygonShape;
 import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.TimeUtils;
 
 public class Pidgin implements ApplicationListener {
 
 	private static final float MAX_MOVE_VELOCITY = 30f;
 	private static final float MIN_MOVE_VELOCITY = 20f;
 
+	/**
+	 * The physics world is always advanced in steps of this size, no matter what the frame rate is. Frames that take
+	 * longer than one step run several steps to catch up, but never more than MAX_STEPS_PER_FRAME so that a single slow
+	 * frame can't make the following frames even slower.
+	 */
+	static final float TIME_STEP = 1 / 60f;
+	private static final int MAX_STEPS_PER_FRAME = 5;
+
+	/**
+	 * While constantMove is on, the move velocity grows by a little every this many physics steps, 0.1 s of simulated
+	 * time. Counting steps instead of reading the clock makes a replayed run speed up exactly like the recorded one.
+	 */
+	private static final int SPEED_UP_STEPS = 6;
+
+	/**
+	 * Buttons of a frame's input, see InputSource. The move, jump and crouch buttons are held for all physics steps until
+	 * the next frame's input, and also reach the next step when they were only pressed in frames between two steps. The
+	 * others act once per frame. DEBUG only toggles what is drawn, once per press.
+	 */
+	static final int MOVE_RIGHT = 1;
+	static final int MOVE_LEFT = 1 << 1;
+	static final int JUMP = 1 << 2;
+	static final int CROUCH = 1 << 3;
+	static final int RESET = 1 << 4;
+	static final int RESET_LOW = 1 << 5;
+	static final int BACKOFF_X = 1 << 6;
+	static final int BACKOFF_Y = 1 << 7;
+	static final int TOGGLE_CONSTANT_MOVE = 1 << 8;
+	static final int DEBUG = 1 << 9;
+
+	private static final int STEP_BUTTONS = MOVE_RIGHT | MOVE_LEFT | JUMP | CROUCH;
+
+	/**
+	 * What the simulation publishes for the render thread when the physics runs on its own thread, see
+	 * ThreadedSimulation.snapshot.
+	 */
+	private static final int STATE_PREVIOUS_X = 0;
+	private static final int STATE_PREVIOUS_Y = 1;
+	private static final int STATE_X = 2;
+	private static final int STATE_Y = 3;
+	private static final int STATE_MOVE_VELOCITY = 4;
+	private static final int STATE_CROUCHING = 5;
+	private static final int STATE_FACING_RIGHT = 6;
+	private static final int STATE_BODIES = 7;
+	private static final int STATE_CONTACTS = 8;
+	private static final int STATE_SIZE = 9;
+
+	private static final String PIDGIN_TEXTURE = "data/images/characters/pidgin/pidgin.png";
+	private static final String CROUCH_TEXTURE = "data/images/characters/pidgin/pidgin-crouch.png";
+
 	private TiledMapHelper tiledMapHelper;
 
+	/**
+	 * Whether the level has finished loading, and the progress bar drawn until then.
+	 */
+	private boolean loaded;
+	private ShapeRenderer loadingRenderer;
+	private MapGeometry mapGeometry;
+
 	/**
 	 * Holder of the texture for the various non-map sprites the game will have.
 	 */
@@ -66,11 +128,33 @@ public class Pidgin implements ApplicationListener {
 	private Body jumper;
 
 	/**
-	 * This box2d debug renderer comes from libgdx test code. It draws lines over all collision boundaries, so it is
-	 * immensely useful for verifying that the world collisions are as you expect them to be. It is, however, slow, so
-	 * only use it for testing.
+	 * The jumper's only fixture and its shape. They are resized in place when the jumper crouches or stands up, which
+	 * happens only on the transition, not every frame.
+	 */
+	private Fixture jumperFixture;
+	private PolygonShape jumperFixtureShape;
+	private boolean crouching;
+
+	/**
+	 * Scratch vector for the impulses applied in doMoves(), so that no garbage is produced per frame.
+	 */
+	private final Vector2 impulse = new Vector2();
+
+	/**
+	 * Time left over from previous frames that was not yet simulated, and the jumper's position before the last
+	 * physics step. The sprite is drawn between the previous and the current position, depending on how far the
+	 * accumulator is into the next step.
+	 */
+	private float accumulator;
+	private final Vector2 previousPosition = new Vector2();
+	private final Vector2 renderPosition = new Vector2();
+
+	/**
+	 * Draws lines over all collision boundaries, which is immensely useful for verifying that the world collisions are
+	 * as you expect them to be. Off until toggled with the DEBUG button.
 	 */
-	private Box2DDebugRenderer debugRenderer;
+	private DebugOverlay debugOverlay;
+	private boolean debugDown;
 
 	/**
 	 * Box2d works best with small values. If you use pixels directly you will get weird results -- speeds and
@@ -89,6 +173,11 @@ public class Pidgin implements ApplicationListener {
 
 	private final Log log;
 
+	/**
+	 * Where the frame time goes, reported through the log every few seconds.
+	 */
+	private final FrameMetrics metrics;
+
 	private float jumpVelocity;
 
 	private float gravity;
@@ -105,13 +194,58 @@ public class Pidgin implements ApplicationListener {
 
 	private boolean moveLeft;
 
+	/**
+	 * The STEP_BUTTONS pressed in any frame since the last physics step. Every frame's input replaces the buttons of the
+	 * frame before, so a tap in frames without a step, or in frames queued for the physics thread, would otherwise never
+	 * reach a step.
+	 */
+	private int pendingButtons;
+
 	private float moveVelocity;
 
+	/**
+	 * Physics steps since the move velocity last grew.
+	 */
+	private int speedUpSteps;
+
 	private final String map;
 
+	/**
+	 * Steps the physics off the render thread, or null to step it in render(). While it runs, only the simulation
+	 * touches the world and the jumper, and render() draws from the latest snapshot.
+	 */
+	private final PhysicsThread physicsThread;
+	private final PhysicsThread.Simulation simulation = new ThreadedSimulation();
+	private final float[] snapshot = new float[STATE_SIZE];
+	private int snapshotStep;
+	private long snapshotTime;
+	private final Vector2 snapshotPosition = new Vector2();
+
+	private final InputSource input;
+	/**
+	 * Whether the input source has run out of frames. The game then stops updating and exits.
+	 */
+	private boolean finished;
+
 	public Pidgin(Log log) {
+		this(log, null);
+	}
+
+	public Pidgin(Log log, PhysicsThread physicsThread) {
+		this(log, physicsThread, null);
+	}
+
+	/**
+	 * @param physicsThread steps the physics off the render thread, or null to step it in render()
+	 * @param input where the input comes from, or null for the keys and touches. An input source with frames of its own
+	 *            should come without a physics thread, as the thread steps by its own clock.
+	 */
+	public Pidgin(Log log, PhysicsThread physicsThread, InputSource input) {
 		super();
 		this.log = log;
+		this.physicsThread = physicsThread;
+		this.input = input != null ? input : new GdxInputSource();
+		this.metrics = new FrameMetrics(log);
 		this.map = "ulica";
 
 		// Defer until create() when Gdx is initialized.
@@ -126,8 +260,6 @@ public class Pidgin implements ApplicationListener {
 	private final float scale = 2f;
 
 	private float defaultZoom;
-	private long now;
-	private long before;
 
 	@Override
 	public void create() {
@@ -142,20 +274,51 @@ public class Pidgin implements ApplicationListener {
 		camera.zoom = defaultZoom;
 		tiledMapHelper = new TiledMapHelper();
 		tiledMapHelper.setPackerDirectory("data/maps/");
-		tiledMapHelper.loadMap("data/maps/" + map + ".tmx", scale);
-		tiledMapHelper.getRenderer().setView(camera);
+		tiledMapHelper.queueMap("data/maps/" + map + ".tmx", getCollisionFile(), scale);
+		if (!tiledMapHelper.hasAtlas()) {
+			TextureParameter parameter = new TextureParameter();
+			parameter.minFilter = TextureFilter.Linear;
+			parameter.magFilter = TextureFilter.Linear;
+			tiledMapHelper.getAssetManager().load(PIDGIN_TEXTURE, Texture.class, parameter);
+			tiledMapHelper.getAssetManager().load(CROUCH_TEXTURE, Texture.class, parameter);
+		}
+		// The rest is set up by loaded(), once render() has seen everything queued finish loading.
+	}
 
-		overallTexture = new Texture(Gdx.files.internal("data/images/characters/pidgin/pidgin.png"));
-		overallTexture.setFilter(TextureFilter.Linear, TextureFilter.Linear);
+	/**
+	 * Loads everything create() queued right away, for code that drives the game without calling render().
+	 */
+	void finishLoading() {
+		tiledMapHelper.finishLoading();
+		loaded();
+	}
 
-		crouchTexture = new Texture(Gdx.files.internal("data/images/characters/pidgin/pidgin-crouch.png"));
-		crouchTexture.setFilter(TextureFilter.Linear, TextureFilter.Linear);
+	/**
+	 * Sets up the game once the map, the textures and the collision edges are loaded.
+	 */
+	private void loaded() {
+		loaded = true;
+		tiledMapHelper.getRenderer().setView(camera);
+		mapGeometry = tiledMapHelper.getGeometry();
 
 		pidginWidth = 2.88f;
 		pidginHeight = 4.32f;
+		int spriteWidth = (int) (pidginWidth * PIXELS_PER_METER);
+		int spriteHeight = (int) (pidginHeight * PIXELS_PER_METER);
+		int crouchHeight = (int) (pidginHeight / 2 * PIXELS_PER_METER);
+
+		TextureAtlas atlas = tiledMapHelper.getAtlas();
+		if (atlas != null) {
+			// Drawn from the same atlas pages as the map tiles.
+			jumperSprite = normalSprite = new Sprite(tiledMapHelper.findRegion("pidgin"), 0, 0, spriteWidth, spriteHeight);
+			crouchSprite = new Sprite(tiledMapHelper.findRegion("pidgin-crouch"), 0, 0, spriteWidth, crouchHeight);
+		} else {
+			overallTexture = tiledMapHelper.getAssetManager().get(PIDGIN_TEXTURE, Texture.class);
+			crouchTexture = tiledMapHelper.getAssetManager().get(CROUCH_TEXTURE, Texture.class);
 
-		jumperSprite = normalSprite = new Sprite(overallTexture, 0, 0, (int) (pidginWidth * PIXELS_PER_METER), (int) (pidginHeight * PIXELS_PER_METER));
-		crouchSprite = new Sprite(crouchTexture, 0, 0, (int) (pidginWidth * PIXELS_PER_METER), (int) (pidginHeight / 2 * PIXELS_PER_METER));
+			jumperSprite = normalSprite = new Sprite(overallTexture, 0, 0, spriteWidth, spriteHeight);
+			crouchSprite = new Sprite(crouchTexture, 0, 0, spriteWidth, crouchHeight);
+		}
 
 		spriteBatch = new SpriteBatch();
 
@@ -180,166 +343,397 @@ public class Pidgin implements ApplicationListener {
 		jumperFixtureDef.friction = 0;
 		jumperFixtureDef.restitution = 0;
 
-		jumper.createFixture(jumperFixtureDef);
+		jumperFixture = jumper.createFixture(jumperFixtureDef);
+		jumperFixtureShape = (PolygonShape) jumperFixture.getShape();
 		jumperShape.dispose();
 
-		tiledMapHelper.loadCollisions("data/images/tiles/" + map + ".collision", world, PIXELS_PER_METER / scale);
+		// Only the chunks around the jumper get bodies now, the rest are created frame by frame as the camera scrolls, so
+		// the physics world only ever holds the part of the level around the jumper.
+		tiledMapHelper.setCollisionChunkColumns(CollisionData.CHUNK_COLUMNS);
+		tiledMapHelper.createCollisions(world, getCollisionPixelsPerMeter());
+		updateCollisionChunksAround(jumper.getPosition().x);
 
-		debugRenderer = new Box2DDebugRenderer();
+		debugOverlay = new DebugOverlay();
+		debugOverlay.setStaticEdges(tiledMapHelper.getCollisionData());
 
 		jumpVelocity = 25;
 		moveVelocity = MIN_MOVE_VELOCITY;
-		now = System.currentTimeMillis();
+
+		previousPosition.set(jumper.getPosition());
+		renderPosition.set(previousPosition);
+
+		if (loadingRenderer != null) {
+			loadingRenderer.dispose();
+			loadingRenderer = null;
+		}
+
+		startPhysicsThread();
+	}
+
+	private void startPhysicsThread() {
+		if (physicsThread == null) return;
+		// Until the first step, draw what the world looks like now.
+		simulation.snapshot(snapshot);
+		snapshotStep = 0;
+		physicsThread.start(simulation, STATE_SIZE, TIME_STEP);
 	}
 
 	@Override
 	public void resume() {
+		if (loaded) startPhysicsThread();
 	}
 
 	@Override
 	public void render() {
-		doJump = false;
-		doCrouch = false;
-		moveRight = false;
-		moveLeft = false;
+		if (!loaded) {
+			if (!tiledMapHelper.update()) {
+				renderLoading(tiledMapHelper.getProgress());
+				return;
+			}
+			loaded();
+		}
 
-		getInput();
-		doMoves();
+		if (finished) return;
 
-		world.step(Gdx.app.getGraphics().getDeltaTime(), 3, 3);
+		metrics.begin(FrameMetrics.FRAME);
+		if (physicsThread != null) updateFromSnapshot();
+		else update(Gdx.graphics.getDeltaTime());
 
 		Gdx.gl.glClearColor(0, 0.5f, 0.9f, 0);
 		Gdx.gl.glClear(GL10.GL_COLOR_BUFFER_BIT);
 
-		controlCamera();
-
-		camera.update();
+		metrics.begin(FrameMetrics.MAP);
 		tiledMapHelper.getRenderer().setView(camera);
 		tiledMapHelper.getRenderer().render();
+		metrics.end(FrameMetrics.MAP);
 
+		metrics.begin(FrameMetrics.SPRITES);
 		spriteBatch.setProjectionMatrix(camera.combined);
 		spriteBatch.begin();
 
-		if (jumper.getPosition().x * PIXELS_PER_METER > tiledMapHelper.getWidth() * scale - jumperSprite.getWidth()) {
-			jumper.setTransform(1.0f, startHeight, 0f);
-		}
-
-		jumperSprite.setPosition(PIXELS_PER_METER * jumper.getPosition().x - jumperSprite.getWidth() / 2, PIXELS_PER_METER * jumper.getPosition().y
+		jumperSprite.setPosition(PIXELS_PER_METER * renderPosition.x - jumperSprite.getWidth() / 2, PIXELS_PER_METER * renderPosition.y
 				- jumperSprite.getHeight() / 2);
 		jumperSprite.draw(spriteBatch);
 
 		spriteBatch.end();
-		debugRenderer.render(world, camera.combined.scale(Pidgin.PIXELS_PER_METER, Pidgin.PIXELS_PER_METER, Pidgin.PIXELS_PER_METER));
+		metrics.end(FrameMetrics.SPRITES);
+		metrics.count(FrameMetrics.RENDER_CALLS, tiledMapHelper.getRenderer().getRenderCalls() + spriteBatch.renderCalls);
+		// The batch only draws the jumper, it switches textures unless the map was drawn from the same atlas page.
+		metrics.count(FrameMetrics.TEXTURE_SWITCHES, tiledMapHelper.getRenderer().getTextureSwitches()
+				+ (jumperSprite.getTexture() != tiledMapHelper.getRenderer().getLastTexture() ? 1 : 0));
+
+		debugOverlay.render(camera.combined, scale, physicsThread == null ? world : null, PIXELS_PER_METER);
+		metrics.end(FrameMetrics.FRAME);
+		metrics.endFrame();
+	}
+
+	/**
+	 * Draws a progress bar while the level loads.
+	 * 
+	 * @param progress 0 to 1
+	 */
+	private void renderLoading(float progress) {
+		Gdx.gl.glClearColor(0, 0.5f, 0.9f, 0);
+		Gdx.gl.glClear(GL10.GL_COLOR_BUFFER_BIT);
+
+		if (loadingRenderer == null) loadingRenderer = new ShapeRenderer();
+		float width = screenWidth * 0.6f;
+		float height = screenHeight * 0.04f;
+		float x = (screenWidth - width) / 2;
+		float y = (screenHeight - height) / 2;
+		loadingRenderer.begin(ShapeType.Filled);
+		loadingRenderer.setColor(0, 0.3f, 0.6f, 1);
+		loadingRenderer.rect(x, y, width, height);
+		loadingRenderer.setColor(1, 1, 1, 1);
+		loadingRenderer.rect(x, y, width * progress, height);
+		loadingRenderer.end();
 	}
 
-	private void getInput() {
-		if (Gdx.input.isKeyPressed(Input.Keys.DPAD_RIGHT)) {
-			moveRight = true;
+	/**
+	 * Runs the simulation part of a frame -- input, physics and camera -- without touching GL, so it can also be driven
+	 * headless.
+	 * 
+	 * @param delta the time the last frame took, in seconds
+	 */
+	void update(float delta) {
+		metrics.begin(FrameMetrics.INPUT);
+		if (!input.nextFrame(delta)) {
+			finish();
+			return;
 		}
-		if (Gdx.input.isKeyPressed(Input.Keys.DPAD_LEFT)) {
-			moveLeft = true;
+		applyInput(input.getButtons());
+		toggleDebugOverlay(input.getButtons());
+		metrics.end(FrameMetrics.INPUT);
+
+		metrics.begin(FrameMetrics.PHYSICS);
+		stepWorld(input.getDelta());
+		metrics.end(FrameMetrics.PHYSICS);
+		metrics.count(FrameMetrics.BODIES, world.getBodyCount());
+		metrics.count(FrameMetrics.CONTACTS, world.getContactCount());
+		updateSprite(crouching, jumperFacingRight);
+
+		metrics.begin(FrameMetrics.CAMERA);
+		if (isPastMapEnd()) {
+			moveJumper(1.0f, startHeight);
 		}
-		if (Gdx.input.isKeyPressed(Input.Keys.DPAD_UP)) {
-			doJump = true;
-		} else {
-			for (int i = 0; i < 2; i++) {
-				if (Gdx.input.isTouched(i) && Gdx.input.getX(i) > screenWidth * 0.8f) {
-					doJump = true;
-				}
-			}
+
+		controlCamera();
+		camera.update();
+		metrics.end(FrameMetrics.CAMERA);
+	}
+
+	/**
+	 * The render thread's part of a frame while the physics runs on its own thread: posts the input, and places the
+	 * sprite and the camera by the latest snapshot.
+	 */
+	private void updateFromSnapshot() {
+		metrics.begin(FrameMetrics.INPUT);
+		if (!input.nextFrame(Gdx.graphics.getDeltaTime())) {
+			finish();
+			return;
 		}
-		if (Gdx.input.isKeyPressed(Input.Keys.DPAD_DOWN)) {
-			doCrouch = true;
-		} else {
-			for (int i = 0; i < 2; i++) {
-				if (Gdx.input.isTouched(i) && Gdx.input.getX(i) < screenWidth * 0.2f && Gdx.input.getY(i) > screenHeight * 0.4) {
-					doCrouch = true;
-				}
-			}
+		physicsThread.postInput(input.getButtons());
+		toggleDebugOverlay(input.getButtons());
+		metrics.end(FrameMetrics.INPUT);
+
+		int step = physicsThread.readSnapshot(snapshot);
+		long time = TimeUtils.nanoTime();
+		if (step != snapshotStep) {
+			snapshotStep = step;
+			snapshotTime = time;
 		}
-		if (Gdx.input.isKeyPressed(Input.Keys.Q)) {
-			reset();
-		} else {
-			for (int i = 0; i < 2; i++) {
-				if (Gdx.input.isTouched(i) && Gdx.input.getX(i) < screenWidth * 0.2f && Gdx.input.getY(i) < screenHeight * 0.2) {
-					reset();
-				}
-				if (Gdx.input.isTouched(i) && Gdx.input.getX(i) < screenWidth * 0.2f && Gdx.input.getY(i) > screenHeight * 0.2
-						&& Gdx.input.getY(i) < screenHeight * 0.4) {
-					reset2();
-				}
-			}
+		// Interpolated like stepWorld does, by how long ago the snapshot was first seen.
+		float alpha = Math.min(1, (time - snapshotTime) / (TIME_STEP * 1e9f));
+		renderPosition.set(snapshot[STATE_PREVIOUS_X], snapshot[STATE_PREVIOUS_Y]).lerp(snapshotPosition.set(snapshot[STATE_X], snapshot[STATE_Y]),
+				alpha);
+		metrics.count(FrameMetrics.BODIES, (int) snapshot[STATE_BODIES]);
+		metrics.count(FrameMetrics.CONTACTS, (int) snapshot[STATE_CONTACTS]);
+		updateSprite(snapshot[STATE_CROUCHING] != 0, snapshot[STATE_FACING_RIGHT] != 0);
+
+		metrics.begin(FrameMetrics.CAMERA);
+		positionCamera(snapshot[STATE_MOVE_VELOCITY]);
+		camera.update();
+		metrics.end(FrameMetrics.CAMERA);
+	}
+
+	/**
+	 * The simulation part of update() for the physics thread. Streaming the collision chunks follows the jumper
+	 * rather than the camera, as the camera belongs to the render thread.
+	 */
+	private class ThreadedSimulation implements PhysicsThread.Simulation {
+
+		@Override
+		public void input(int buttons) {
+			applyInput(buttons);
+		}
+
+		@Override
+		public void step() {
+			previousPosition.set(jumper.getPosition());
+			doMoves();
+			world.step(TIME_STEP, 3, 3);
+			if (isPastMapEnd()) moveJumper(1.0f, startHeight);
+			updateCollisionChunksAround(jumper.getPosition().x);
+		}
+
+		@Override
+		public void snapshot(float[] state) {
+			state[STATE_PREVIOUS_X] = previousPosition.x;
+			state[STATE_PREVIOUS_Y] = previousPosition.y;
+			state[STATE_X] = jumper.getPosition().x;
+			state[STATE_Y] = jumper.getPosition().y;
+			state[STATE_MOVE_VELOCITY] = moveVelocity;
+			state[STATE_CROUCHING] = crouching ? 1 : 0;
+			state[STATE_FACING_RIGHT] = jumperFacingRight ? 1 : 0;
+			state[STATE_BODIES] = world.getBodyCount();
+			state[STATE_CONTACTS] = world.getContactCount();
+		}
+	}
+
+	/**
+	 * Ends the game once the input source has run out of frames. The jumper's final position is logged, so runs of the
+	 * same replay can be checked to have played out the same.
+	 */
+	private void finish() {
+		finished = true;
+		if (physicsThread != null) physicsThread.stop();
+		log.log("Input finished, jumper at " + jumper.getPosition().x + ", " + jumper.getPosition().y);
+		Gdx.app.exit();
+	}
+
+	/**
+	 * Whether the input source has run out of frames.
+	 */
+	boolean isFinished() {
+		return finished;
+	}
+
+	private boolean isPastMapEnd() {
+		return jumper.getPosition().x * PIXELS_PER_METER > mapGeometry.width * scale - normalSprite.getWidth();
+	}
+
+	/**
+	 * Shows the sprite for the jumper's posture, facing the jumper's direction.
+	 */
+	private void updateSprite(boolean crouching, boolean facingRight) {
+		jumperSprite = crouching ? crouchSprite : normalSprite;
+		if (jumperSprite.isFlipX() == facingRight) jumperSprite.flip(true, false);
+	}
+
+	/**
+	 * Advances the physics world by the given frame time using fixed steps. Moves are applied before every step,
+	 * because box2d clears the applied forces after each step. Whatever time is left over is kept for the next frame
+	 * and used to interpolate the jumper's render position.
+	 * 
+	 * @param delta the time the last frame took, in seconds
+	 */
+	private void stepWorld(float delta) {
+		accumulator += Math.min(delta, MAX_STEPS_PER_FRAME * TIME_STEP);
+
+		int steps = 0;
+		while (accumulator >= TIME_STEP && steps < MAX_STEPS_PER_FRAME) {
+			previousPosition.set(jumper.getPosition());
+			doMoves();
+			world.step(TIME_STEP, 3, 3);
+			accumulator -= TIME_STEP;
+			steps++;
 		}
 
-		if (Gdx.input.isKeyPressed(Input.Keys.A)) {
+		renderPosition.set(previousPosition).lerp(jumper.getPosition(), accumulator / TIME_STEP);
+	}
+
+	/**
+	 * Teleports the jumper. The previous position is moved along, so the sprite doesn't get interpolated across the
+	 * whole distance.
+	 */
+	private void moveJumper(float x, float y) {
+		updateCollisionChunksAround(x);
+		jumper.setTransform(x, y, 0);
+		previousPosition.set(x, y);
+		// With the physics thread, the render position follows with the next snapshot.
+		if (physicsThread == null) renderPosition.set(x, y);
+	}
+
+	/**
+	 * Makes sure the collision bodies exist for a screen's width around the given position, in meters. Used where the
+	 * jumper appears without the camera scrolling there.
+	 */
+	private void updateCollisionChunksAround(float x) {
+		float width = screenWidth * getZoom(moveVelocity);
+		updateCollisionChunks(PIXELS_PER_METER * x - width, PIXELS_PER_METER * x + width);
+	}
+
+	/**
+	 * Streams the collision bodies for the given horizontal range, in camera coordinates.
+	 */
+	private void updateCollisionChunks(float fromX, float toX) {
+		tiledMapHelper.updateCollisionChunks(fromX / scale, toX / scale);
+	}
+
+	/**
+	 * Toggles the debug overlay once per press of the DEBUG button, not on every frame it is held. Called on the render
+	 * thread, as it only changes what is drawn.
+	 */
+	private void toggleDebugOverlay(int buttons) {
+		boolean debugPressed = (buttons & DEBUG) != 0;
+		if (debugPressed && !debugDown) debugOverlay.toggle();
+		debugDown = debugPressed;
+	}
+
+	/**
+	 * Applies a frame of buttons from the input source to the jumper and the world.
+	 */
+	void applyInput(int buttons) {
+		pendingButtons |= buttons & STEP_BUTTONS;
+		buttons |= pendingButtons;
+		moveRight = (buttons & MOVE_RIGHT) != 0;
+		moveLeft = (buttons & MOVE_LEFT) != 0;
+		doJump = (buttons & JUMP) != 0;
+		doCrouch = (buttons & CROUCH) != 0;
+
+		if ((buttons & RESET) != 0) {
+			reset();
+		}
+		if ((buttons & RESET_LOW) != 0) {
+			reset2();
+		}
+		if ((buttons & BACKOFF_X) != 0) {
 			backoff(5f, 0f);
 		}
-		if (Gdx.input.isKeyPressed(Input.Keys.W)) {
+		if ((buttons & BACKOFF_Y) != 0) {
 			backoff(0f, -5f);
 		}
-		if (Gdx.input.isKeyPressed(Input.Keys.M)) {
+		if ((buttons & TOGGLE_CONSTANT_MOVE) != 0) {
 			constantMove = !constantMove;
 			moveVelocity = MIN_MOVE_VELOCITY;
 			jumper.setLinearVelocity(0f, 0f);
 		}
-
 	}
 
-	private void doMoves() {
+	void doMoves() {
+		// This step takes the buttons pressed since the last one, the next step only those pressed from now on.
+		pendingButtons = 0;
+
 		if (!constantMove && moveRight) {
-			jumper.applyLinearImpulse(new Vector2(0.05f, 0.0f), jumper.getWorldCenter(), true);
-			if (jumperFacingRight == false) {
-				jumperSprite.flip(true, false);
-			}
+			jumper.applyLinearImpulse(impulse.set(0.05f, 0.0f), jumper.getWorldCenter(), true);
 			jumperFacingRight = true;
 		} else if (!constantMove && moveLeft) {
-			jumper.applyLinearImpulse(new Vector2(-0.05f, 0.0f), jumper.getWorldCenter(), true);
-			if (jumperFacingRight == true) {
-				jumperSprite.flip(true, false);
-			}
+			jumper.applyLinearImpulse(impulse.set(-0.05f, 0.0f), jumper.getWorldCenter(), true);
 			jumperFacingRight = false;
 		}
 
-		if (doCrouch) {
-			jumper.getFixtureList().get(0).setDensity(0.25f);
-			((PolygonShape) jumper.getFixtureList().get(0).getShape()).setAsBox(pidginWidth / 2, pidginHeight / 4);
-			jumperSprite = crouchSprite;
-		} else {
-			jumper.getFixtureList().get(0).setDensity(0.1f);
-			((PolygonShape) jumper.getFixtureList().get(0).getShape()).setAsBox(pidginWidth / 2, pidginHeight / 2);
-			jumperSprite = normalSprite;
+		if (doCrouch != crouching) {
+			crouching = doCrouch;
+			if (crouching) {
+				jumperFixture.setDensity(0.25f);
+				jumperFixtureShape.setAsBox(pidginWidth / 2, pidginHeight / 4);
+			} else {
+				jumperFixture.setDensity(0.1f);
+				jumperFixtureShape.setAsBox(pidginWidth / 2, pidginHeight / 2);
+			}
+			jumper.resetMassData();
 		}
-		jumper.resetMassData();
 
 		if (doJump && Math.abs(jumper.getLinearVelocity().y) < 1e-4) {
-			jumper.applyLinearImpulse(new Vector2(0.0f, jumpVelocity), jumper.getWorldCenter(), true);
+			jumper.applyLinearImpulse(impulse.set(0.0f, jumpVelocity), jumper.getWorldCenter(), true);
 		}
 
 		if (constantMove) {
 			if (jumper.getLinearVelocity().x < moveVelocity) jumper.applyForceToCenter(moveVelocity, 0, true);
 
-			if (moveVelocity <= MAX_MOVE_VELOCITY) {
-				now = System.currentTimeMillis();
-				if (now - before > 100) {
-					moveVelocity += 0.1f;
-					//					System.out.println(moveVelocity + " | " + jumper.getLinearVelocity().x);
-
-					before = now;
-				}
+			if (moveVelocity <= MAX_MOVE_VELOCITY && ++speedUpSteps >= SPEED_UP_STEPS) {
+				moveVelocity += 0.1f;
+				speedUpSteps = 0;
 			}
 		}
+	}
 
-		if (moveVelocity > MIN_MOVE_VELOCITY) camera.zoom = defaultZoom + (moveVelocity - MIN_MOVE_VELOCITY) / 10f;
-		else camera.zoom = defaultZoom;
+	/**
+	 * The camera zooms out as the jumper speeds up.
+	 */
+	private float getZoom(float moveVelocity) {
+		if (moveVelocity > MIN_MOVE_VELOCITY) return defaultZoom + (moveVelocity - MIN_MOVE_VELOCITY) / 10f;
+		return defaultZoom;
 	}
 
-	private void controlCamera() {
+	void controlCamera() {
+		positionCamera(moveVelocity);
+
+		/**
+		 * Create the collisions just ahead of the view and drop those that scrolled out behind it.
+		 */
+		updateCollisionChunks(camera.position.x - screenWidth / 2 * camera.zoom, camera.position.x + screenWidth / 2 * camera.zoom);
+	}
+
+	private void positionCamera(float moveVelocity) {
+		camera.zoom = getZoom(moveVelocity);
+
 		/**
 		 * The camera is now controlled primarily by the position of the main character, and secondarily by the map
 		 * boundaries.
 		 */
-		camera.position.x = PIXELS_PER_METER * (jumper.getPosition().x - pidginWidth * 1.5f) + screenWidth / 2 * camera.zoom;
-		camera.position.y = PIXELS_PER_METER * jumper.getPosition().y;
+		camera.position.x = PIXELS_PER_METER * (renderPosition.x - pidginWidth * 1.5f) + screenWidth / 2 * camera.zoom;
+		camera.position.y = PIXELS_PER_METER * renderPosition.y;
 
 		/**
 		 * Ensure that the camera is only showing the map, nothing outside.
@@ -347,25 +741,25 @@ public class Pidgin implements ApplicationListener {
 		if (camera.position.x < screenWidth / 2 * camera.zoom) {
 			camera.position.x = screenWidth / 2 * camera.zoom;
 		}
-		if (camera.position.x >= tiledMapHelper.getWidth() * scale - screenWidth / 2 * camera.zoom) {
-			camera.position.x = tiledMapHelper.getWidth() * scale - screenWidth / 2 * camera.zoom;
+		if (camera.position.x >= mapGeometry.width * scale - screenWidth / 2 * camera.zoom) {
+			camera.position.x = mapGeometry.width * scale - screenWidth / 2 * camera.zoom;
 		}
 
 		if (camera.position.y < screenHeight / 2 * camera.zoom) {
 			camera.position.y = screenHeight / 2 * camera.zoom;
 		}
-		if (camera.position.y >= tiledMapHelper.getHeight() * scale - screenHeight / 2 * camera.zoom) {
-			camera.position.y = tiledMapHelper.getHeight() * scale - screenHeight / 2 * camera.zoom;
+		if (camera.position.y >= mapGeometry.height * scale - screenHeight / 2 * camera.zoom) {
+			camera.position.y = mapGeometry.height * scale - screenHeight / 2 * camera.zoom;
 		}
 	}
 
-	private void reset() {
-		jumper.setTransform(1f, startHeight, 0);
+	void reset() {
+		moveJumper(1f, startHeight);
 		moveVelocity = MIN_MOVE_VELOCITY;
 	}
 
 	private void reset2() {
-		jumper.setTransform(1f, startHeight / 3, 0);
+		moveJumper(1f, startHeight / 3);
 		moveVelocity = MIN_MOVE_VELOCITY;
 	}
 
@@ -373,8 +767,55 @@ public class Pidgin implements ApplicationListener {
 		float newX = jumper.getPosition().x - x;
 		if (newX < 0) newX = 0;
 		float newY = jumper.getPosition().y - y;
-		if (newY * PIXELS_PER_METER > tiledMapHelper.getHeight() * scale) newY = tiledMapHelper.getHeight() * scale / PIXELS_PER_METER;
-		jumper.setTransform(newX, newY, 0);
+		if (newY * PIXELS_PER_METER > mapGeometry.height * scale) newY = mapGeometry.height * scale / PIXELS_PER_METER;
+		moveJumper(newX, newY);
+	}
+
+	/**
+	 * The collision file loaded with the map: the one precompiled by CollisionCompiler if there is one, otherwise the
+	 * tile collision file.
+	 */
+	private String getCollisionFile() {
+		String compiled = getCompiledCollisionFile();
+		return Gdx.files.internal(compiled).exists() ? compiled : getTileCollisionFile();
+	}
+
+	private String getCompiledCollisionFile() {
+		return "data/maps/" + map + CollisionDataLoader.COMPILED_SUFFIX;
+	}
+
+	private String getTileCollisionFile() {
+		return "data/images/tiles/" + map + ".collision";
+	}
+
+	/**
+	 * Adds the static collision bodies of the given map, using this map's tile collision file, to the given world.
+	 */
+	void loadCollisions(TiledMapHelper helper, World world) {
+		helper.loadCollisions(getTileCollisionFile(), world, getCollisionPixelsPerMeter());
+	}
+
+	/**
+	 * The map is drawn scaled, so collisions given in map pixels use a correspondingly smaller pixels per meter.
+	 */
+	float getCollisionPixelsPerMeter() {
+		return PIXELS_PER_METER / scale;
+	}
+
+	World getWorld() {
+		return world;
+	}
+
+	InputSource getInputSource() {
+		return input;
+	}
+
+	FrameMetrics getMetrics() {
+		return metrics;
+	}
+
+	TiledMapHelper getTiledMapHelper() {
+		return tiledMapHelper;
 	}
 
 	@Override
@@ -383,9 +824,22 @@ public class Pidgin implements ApplicationListener {
 
 	@Override
 	public void pause() {
+		if (physicsThread != null) physicsThread.stop();
 	}
 
+	/**
+	 * Releases the GL resources, the box2d world and the assets. The game may be disposed while it is still loading, so
+	 * any of them may not exist yet.
+	 */
 	@Override
 	public void dispose() {
+		if (physicsThread != null) physicsThread.stop();
+		if (input instanceof Disposable) ((Disposable) input).dispose();
+		if (debugOverlay != null) debugOverlay.dispose();
+		if (loadingRenderer != null) loadingRenderer.dispose();
+		if (spriteBatch != null) spriteBatch.dispose();
+		if (world != null) world.dispose();
+		// The map, the atlas and the textures are all loaded through the helper's asset manager.
+		if (tiledMapHelper != null) tiledMapHelper.dispose();
 	}
 }
\ No newline at end of file
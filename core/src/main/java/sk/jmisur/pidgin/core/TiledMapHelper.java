@@ -8,20 +8,29 @@ package sk.jmisur.pidgin.core;
  * either express or implied. See the License for the specific language governing permissions and limitations under the
  * License. TiledMapHelper can simplify your game's tiled map operations. You can find some sample code using this class
  * at my blog: http://dpk.net/2011/05/08/libgdx-box2d-tiled-maps-full-working-example-part-2/ Note: This code does have
- * some limitations. It only supports single-layered maps. This code is based on TiledMapTest.java found at:
- * http://code.google.com/p/libgdx/
+ * some limitations. Collisions are built from all layers, but only orthogonal maps are supported. This code is based
+ * on TiledMapTest.java found at: http://code.google.com/p/libgdx/
  */
 
-import java.util.ArrayList;
-import java.util.HashMap;
-
 import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.assets.AssetManager;
+import com.badlogic.gdx.assets.loaders.resolvers.InternalFileHandleResolver;
 import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas.AtlasRegion;
+import com.badlogic.gdx.maps.MapLayer;
+import com.badlogic.gdx.maps.MapObject;
+import com.badlogic.gdx.maps.objects.PolygonMapObject;
+import com.badlogic.gdx.maps.objects.PolylineMapObject;
+import com.badlogic.gdx.maps.objects.RectangleMapObject;
+import com.badlogic.gdx.maps.tiled.AtlasTmxMapLoader;
+import com.badlogic.gdx.maps.tiled.AtlasTmxMapLoader.AtlasTiledMapLoaderParameters;
 import com.badlogic.gdx.maps.tiled.TiledMap;
 import com.badlogic.gdx.maps.tiled.TiledMapTileLayer;
 import com.badlogic.gdx.maps.tiled.TiledMapTileLayer.Cell;
 import com.badlogic.gdx.maps.tiled.TmxMapLoader;
-import com.badlogic.gdx.maps.tiled.renderers.OrthogonalTiledMapRenderer;
+import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Body;
 import com.badlogic.gdx.physics.box2d.BodyDef;
@@ -30,12 +39,23 @@ import com.badlogic.gdx.physics.box2d.World;
 
 public class TiledMapHelper {
 
+	/**
+	 * Name of the pack file written by the AtlasPacker into the packer directory, which the map's atlas property
+	 * refers to.
+	 */
+	public static final String ATLAS_FILE = "pack";
+
+	/**
+	 * Name of the index the AtlasPacker writes next to the pack file, see PackIndex.
+	 */
+	public static final String ATLAS_INDEX_FILE = "pack.index";
+
 	/**
 	 * Renders the part of the map that should be visible to the user.
 	 * 
 	 * @return
 	 */
-	public OrthogonalTiledMapRenderer getRenderer() {
+	public CachedTiledMapRenderer getRenderer() {
 		return tileMapRenderer;
 	}
 
@@ -45,15 +65,15 @@ public class TiledMapHelper {
 	 * @return y
 	 */
 	public int getHeight() {
-		return map.getProperties().get("height", Integer.class) * map.getProperties().get("tileheight", Integer.class);
+		return geometry.height;
 	}
 
 	public int getHeightInTiles() {
-		return map.getProperties().get("height", Integer.class);
+		return geometry.heightInTiles;
 	}
 
 	public int getTileHeight() {
-		return map.getProperties().get("tileheight", Integer.class);
+		return geometry.tileHeight;
 	}
 
 	/**
@@ -62,15 +82,25 @@ public class TiledMapHelper {
 	 * @return x
 	 */
 	public int getWidth() {
-		return map.getProperties().get("width", Integer.class) * map.getProperties().get("tilewidth", Integer.class);
+		return geometry.width;
 	}
 
 	public int getWidthInTiles() {
-		return map.getProperties().get("width", Integer.class);
+		return geometry.widthInTiles;
 	}
 
 	public int getTileWidth() {
-		return map.getProperties().get("tilewidth", Integer.class);
+		return geometry.tileWidth;
+	}
+
+	/**
+	 * Get the dimensions of the map, read once when the map was loaded. Prefer this to the single getters in code that
+	 * runs per frame or per tile.
+	 * 
+	 * @return MapGeometry
+	 */
+	public MapGeometry getGeometry() {
+		return geometry;
 	}
 
 	/**
@@ -82,11 +112,51 @@ public class TiledMapHelper {
 		return map;
 	}
 
+	/**
+	 * Get the texture atlas of the map's tiles and the character sprites, or null if the map was loaded from its
+	 * tileset images because no atlas was packed.
+	 * 
+	 * @return TextureAtlas
+	 */
+	public TextureAtlas getAtlas() {
+		return atlas;
+	}
+
+	/**
+	 * Finds the first region with the name in the atlas. With a pack index written for the atlas, the region is looked
+	 * up in the index instead of searched for by name.
+	 * 
+	 * @return AtlasRegion or null
+	 */
+	public AtlasRegion findRegion(String name) {
+		if (atlas == null) return null;
+		if (atlasIndex != null) {
+			PackIndex.Region found = atlasIndex.find(name);
+			if (found == null) return null;
+			// The atlas orders its regions itself, so the position is checked before it is trusted.
+			if (found.atlasIndex < atlas.getRegions().size) {
+				AtlasRegion region = atlas.getRegions().get(found.atlasIndex);
+				if (region.name.equals(name) && region.index == found.index) return region;
+			}
+		}
+		return atlas.findRegion(name);
+	}
+
+	/**
+	 * Replaces the loaded map, for tools that build maps in code rather than from a tmx file.
+	 */
+	void setMap(TiledMap map) {
+		this.map = map;
+		geometry = new MapGeometry(map.getProperties());
+	}
+
 	/**
 	 * Calls dispose on all disposable resources held by this object.
 	 */
 	public void dispose() {
-		tileMapRenderer.dispose();
+		if (tileMapRenderer != null) tileMapRenderer.dispose();
+		if (assetManager != null) assetManager.dispose();
+		if (chunkShape != null) chunkShape.dispose();
 	}
 
 	/**
@@ -98,23 +168,148 @@ public class TiledMapHelper {
 		packFileDirectory = Gdx.files.internal(packDirectory);
 	}
 
+	/**
+	 * Get the asset manager the map is loaded with, to queue more assets that should load along with it.
+	 * 
+	 * @return AssetManager
+	 */
+	public AssetManager getAssetManager() {
+		if (assetManager == null) assetManager = new AssetManager();
+		return assetManager;
+	}
+
+	/**
+	 * Tells whether the packer directory holds a texture atlas, which loadMap will load the tiles from.
+	 */
+	public boolean hasAtlas() {
+		return packFileDirectory.child(ATLAS_FILE).exists();
+	}
+
 	/**
 	 * Loads the requested tmx map file in to the helper.
 	 * 
 	 * @param tmxFile
 	 */
 	public void loadMap(String tmxFile, float scale) {
+		queueMap(tmxFile, null, scale);
+		finishLoading();
+	}
+
+	/**
+	 * Queues the requested tmx map file, and optionally its collision file, with the asset manager. The map is parsed,
+	 * the tileset images decoded and the collision edges built on the asset manager's loader thread. Call update on the
+	 * render thread until it returns true, which uploads the textures one asset per call.
+	 * 
+	 * @param tmxFile
+	 * @param collisionFile a file compiled by CollisionCompiler or a tile collision file, see CollisionDataLoader, or
+	 *           null
+	 */
+	public void queueMap(String tmxFile, String collisionFile, float scale) {
 		if (packFileDirectory == null) {
-			throw new IllegalStateException("loadMap() called out of sequence");
+			throw new IllegalStateException("queueMap() called out of sequence");
+		}
+
+		this.tmxFile = tmxFile;
+		this.collisionFile = collisionFile;
+		this.scale = scale;
+		AssetManager assetManager = getAssetManager();
+		InternalFileHandleResolver resolver = new InternalFileHandleResolver();
+
+		if (hasAtlas()) {
+			// The tiles and the characters share the atlas pages, so the map and the sprites need only a few texture
+			// binds. The asset manager loads the atlas as a dependency of the map, and keeps it for getAtlas.
+			AtlasTiledMapLoaderParameters parameters = new AtlasTiledMapLoaderParameters();
+			parameters.textureMinFilter = TextureFilter.Linear;
+			parameters.textureMagFilter = TextureFilter.Linear;
+			assetManager.setLoader(TiledMap.class, new AtlasTmxMapLoader(resolver));
+			assetManager.load(tmxFile, TiledMap.class, parameters);
+		} else {
+			assetManager.setLoader(TiledMap.class, new TmxMapLoader(resolver));
+			assetManager.load(tmxFile, TiledMap.class);
+		}
+
+		if (collisionFile != null) {
+			CollisionDataLoader.Parameters parameters = new CollisionDataLoader.Parameters();
+			parameters.mapFile = tmxFile;
+			assetManager.setLoader(CollisionData.class, new CollisionDataLoader(resolver));
+			assetManager.load(collisionFile, CollisionData.class, parameters);
+		}
+	}
+
+	/**
+	 * Continues loading the queued map and assets, see queueMap. Must be called on the render thread.
+	 * 
+	 * @return true once everything is loaded and the map is ready
+	 */
+	public boolean update() {
+		if (!assetManager.update()) return false;
+		if (map == null) mapLoaded();
+		return true;
+	}
+
+	/**
+	 * Tells how much of the queued map and assets is loaded.
+	 * 
+	 * @return 0 to 1
+	 */
+	public float getProgress() {
+		return assetManager.getProgress();
+	}
+
+	/**
+	 * Loads the rest of the queued map and assets, blocking until they are done.
+	 */
+	public void finishLoading() {
+		assetManager.finishLoading();
+		if (map == null) mapLoaded();
+	}
+
+	private void mapLoaded() {
+		map = assetManager.get(tmxFile, TiledMap.class);
+		FileHandle atlasFile = packFileDirectory.child(ATLAS_FILE);
+		if (assetManager.isLoaded(atlasFile.path(), TextureAtlas.class)) {
+			atlas = assetManager.get(atlasFile.path(), TextureAtlas.class);
+			atlasIndex = loadAtlasIndex(atlasFile);
 		}
+		geometry = new MapGeometry(map.getProperties());
+		tileMapRenderer = new CachedTiledMapRenderer(map, scale);
+	}
 
-		map = new TmxMapLoader().load(tmxFile);
-		tileMapRenderer = new OrthogonalTiledMapRenderer(map, scale);
+	/**
+	 * Loads the pack index next to the pack file, or returns null if there is none or it was written for another pack
+	 * file. Only the length and modification time of the pack file are compared, the pack file is not read again.
+	 */
+	private PackIndex loadAtlasIndex(FileHandle atlasFile) {
+		FileHandle indexFile = packFileDirectory.child(ATLAS_INDEX_FILE);
+		if (!indexFile.exists()) return null;
+		try {
+			PackIndex index = new PackIndex(indexFile);
+			return index.isIndexOf(atlasFile.length(), atlasFile.lastModified()) ? index : null;
+		} catch (IllegalStateException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Adds the static collision bodies of the collision file loaded along with the map, see queueMap. With collision
+	 * chunks, the bodies are only added by updateCollisionChunks.
+	 * 
+	 * @param world
+	 * @param pixelsPerMeter the pixels per meter scale used for this world
+	 */
+	public void createCollisions(World world, float pixelsPerMeter) {
+		if (collisionFile == null) throw new IllegalStateException("No collision file was queued with the map");
+		CollisionData data = assetManager.get(collisionFile, CollisionData.class);
+		createCollisionChunks(data, world, pixelsPerMeter);
+		// The helper keeps the data from now on.
+		assetManager.unload(collisionFile);
+		collisionFile = null;
 	}
 
 	/**
-	 * Reads a file describing the collision boundaries that should be set per-tile and adds static bodies to the boxd
-	 * world.
+	 * Reads a file describing the collision boundaries that should be set per-tile and adds static bodies for the tiles
+	 * of all tile layers, and for the shapes on all object layers, to the boxd world. With collision chunks, the bodies
+	 * are only added by updateCollisionChunks.
 	 * 
 	 * @param collisionsFile
 	 * @param world
@@ -123,217 +318,186 @@ public class TiledMapHelper {
 	public void loadCollisions(String collisionsFile, World world, float pixelsPerMeter) {
 		/**
 		 * Detect the tiles and dynamically create a representation of the map layout, for collision detection. Each
-		 * tile has its own collision rules stored in an associated file. The file contains lines in this format (one
-		 * line per type of tile): tileNumber XxY,XxY XxY,XxY Ex: 3 0x0,31x0 ... 4 0x0,29x0 29x0,29x31 For a 32x32
-		 * tileset, the above describes one line segment for tile #3 and two for tile #4. Tile #3 has a line segment
-		 * across the top. Tile #1 has a line segment across most of the top and a line segment from the top to the
-		 * bottom, 30 pixels in.
+		 * tile has its own collision rules stored in an associated file, see CollisionBuilder.readTileCollisions.
 		 */
-
 		FileHandle fh = Gdx.files.internal(collisionsFile);
-		String collisionFile = fh.readString();
-		String lines[] = collisionFile.split("\\r?\\n");
-
-		HashMap<Integer, ArrayList<LineSegment>> tileCollisionJoints = new HashMap<Integer, ArrayList<LineSegment>>();
-
-		/**
-		 * Some locations on the map (perhaps most locations) are "undefined", empty space, and will have the tile type
-		 * 0. This code adds an empty list of line segments for this "default" tile.
-		 */
-		tileCollisionJoints.put(Integer.valueOf(0), new ArrayList<LineSegment>());
-
-		for (int n = 0; n < lines.length; n++) {
-			String cols[] = lines[n].split(" ");
-			int tileNo = Integer.parseInt(cols[0]);
 
-			ArrayList<LineSegment> tmp = new ArrayList<LineSegment>();
-
-			for (int m = 1; m < cols.length; m++) {
-				String coords[] = cols[m].split(",");
-
-				String start[] = coords[0].split("x");
-				String end[] = coords[1].split("x");
+		CollisionData data = buildCollisions(map, geometry, fh.readString());
+		createCollisionChunks(data, world, pixelsPerMeter);
+	}
 
-				tmp.add(new LineSegment(Integer.parseInt(start[0]), Integer.parseInt(start[1]), Integer.parseInt(end[0]), Integer.parseInt(end[1])));
+	/**
+	 * Builds the merged collision edges of all layers of the map from the per-tile collision rules, cut into chunks of
+	 * CollisionData.CHUNK_COLUMNS. Only reads the map, so it can run on a loader thread.
+	 */
+	static CollisionData buildCollisions(TiledMap map, MapGeometry geometry, String tileCollisions) {
+		CollisionBuilder builder = new CollisionBuilder(geometry.tileWidth, geometry.tileHeight);
+		builder.readTileCollisions(tileCollisions);
+
+		for (MapLayer layer : map.getLayers()) {
+			if (layer instanceof TiledMapTileLayer) {
+				addTileCollisions(builder, (TiledMapTileLayer) layer, geometry);
+			} else {
+				addObjectCollisions(builder, layer);
 			}
-
-			tileCollisionJoints.put(Integer.valueOf(tileNo), tmp);
 		}
 
-		ArrayList<LineSegment> collisionLineSegments = new ArrayList<LineSegment>();
-
-		for (int y = 0; y < getHeightInTiles(); y++) {
-			for (int x = 0; x < getWidthInTiles(); x++) {
-				Cell cell = ((TiledMapTileLayer) getMap().getLayers().get(0)).getCell(x, y);
-				if (cell != null) {
-					int tileType = cell.getTile().getId();
-
-					for (int n = 0; n < tileCollisionJoints.get(Integer.valueOf(tileType)).size(); n++) {
-						LineSegment lineSeg = tileCollisionJoints.get(Integer.valueOf(tileType)).get(n);
+		return CollisionData.chunk(geometry.width, geometry.height, builder.getEdges(), CollisionData.CHUNK_COLUMNS * geometry.tileWidth);
+	}
 
-						addOrExtendCollisionLineSegment(x * getTileWidth() + lineSeg.start().x, y * getTileHeight() - lineSeg.start().y + getTileHeight(), x
-								* getTileWidth() + lineSeg.end().x, y * getTileHeight() - lineSeg.end().y + getTileHeight(), collisionLineSegments);
-					}
+	private static void addTileCollisions(CollisionBuilder builder, TiledMapTileLayer layer, MapGeometry geometry) {
+		int width = Math.min(layer.getWidth(), geometry.widthInTiles);
+		int height = Math.min(layer.getHeight(), geometry.heightInTiles);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				Cell cell = layer.getCell(x, y);
+				if (cell != null && cell.getTile() != null) {
+					builder.addTile(cell.getTile().getId(), x, y);
 				}
 			}
 		}
+	}
 
-		BodyDef groundBodyDef = new BodyDef();
-		groundBodyDef.type = BodyDef.BodyType.StaticBody;
-		Body groundBody = world.createBody(groundBodyDef);
-		for (LineSegment lineSegment : collisionLineSegments) {
-			EdgeShape environmentShape = new EdgeShape();
-
-			environmentShape.set(lineSegment.start().scl(1 / pixelsPerMeter), lineSegment.end().scl(1 / pixelsPerMeter));
-			groundBody.createFixture(environmentShape, 0);
-			environmentShape.dispose();
+	/**
+	 * Polylines, polygons and rectangles drawn on object layers become collision edges as they are. Other objects, like
+	 * ellipses, are ignored.
+	 */
+	private static void addObjectCollisions(CollisionBuilder builder, MapLayer layer) {
+		for (MapObject object : layer.getObjects()) {
+			if (object instanceof PolylineMapObject) {
+				builder.addPolyline(((PolylineMapObject) object).getPolyline().getTransformedVertices(), false);
+			} else if (object instanceof PolygonMapObject) {
+				builder.addPolyline(((PolygonMapObject) object).getPolygon().getTransformedVertices(), true);
+			} else if (object instanceof RectangleMapObject) {
+				Rectangle rectangle = ((RectangleMapObject) object).getRectangle();
+				builder.addRectangle(rectangle.x, rectangle.y, rectangle.width, rectangle.height);
+			}
 		}
+	}
 
-		/**
-		 * Drawing a boundary around the entire map. We can't use a box because then the world objects would be inside
-		 * and the physics engine would try to push them out.
-		 */
-
-		EdgeShape mapBounds = new EdgeShape();
-		mapBounds.set(new Vector2(0.0f, 0.0f), new Vector2(getWidth() / pixelsPerMeter, 0.0f));
-		groundBody.createFixture(mapBounds, 0);
-
-		mapBounds.set(new Vector2(0.0f, getHeight() / pixelsPerMeter), new Vector2(getWidth() / pixelsPerMeter, getHeight() / pixelsPerMeter));
-		groundBody.createFixture(mapBounds, 0);
-
-		mapBounds.set(new Vector2(0.0f, 0.0f), new Vector2(0.0f, getHeight() / pixelsPerMeter));
-		groundBody.createFixture(mapBounds, 0);
-
-		mapBounds.set(new Vector2(getWidth() / pixelsPerMeter, 0.0f), new Vector2(getWidth() / pixelsPerMeter, getHeight() / pixelsPerMeter));
-		groundBody.createFixture(mapBounds, 0);
+	/**
+	 * Reads a collision file compiled by CollisionCompiler and adds static bodies to the box2d world. The file already
+	 * holds the merged edges in map coordinates, so nothing is expanded or merged at load. With collision chunks, the
+	 * bodies are only added by updateCollisionChunks.
+	 * 
+	 * @param compiledFile
+	 * @param world
+	 * @param pixelsPerMeter the pixels per meter scale used for this world
+	 */
+	public void loadCompiledCollisions(FileHandle compiledFile, World world, float pixelsPerMeter) {
+		CollisionData data = CollisionData.readCompiled(compiledFile);
+		createCollisionChunks(data, world, pixelsPerMeter);
+	}
 
-		mapBounds.dispose();
+	/**
+	 * Takes the collision edges, cut into chunks of the configured number of tile columns. The edges are cut again only
+	 * if they were cut for another chunk width. Without chunking, the whole map is a single chunk whose body is created
+	 * right away.
+	 */
+	private void createCollisionChunks(CollisionData data, World world, float pixelsPerMeter) {
+		collisionWorld = world;
+		collisionPixelsPerMeter = pixelsPerMeter;
+		collisionData = data.rechunk(collisionChunkColumns > 0 ? collisionChunkColumns * geometry.tileWidth : data.width);
+		chunkBodies = new Body[collisionData.getChunkCount()];
+		firstActiveChunk = 0;
+		lastActiveChunk = -1;
+
+		if (collisionChunkColumns <= 0) updateCollisionChunks(0, data.width);
 	}
 
 	/**
-	 * This is a helper function that makes calls that will attempt to extend one of the line segments already tracked
-	 * by TiledMapHelper, if possible. The goal is to have as few line segments as possible. Ex: If you have a line
-	 * segment in the system that is from 1x1 to 3x3 and this function is called for a line that is 4x4 to 9x9, rather
-	 * than add a whole new line segment to the list, the 1x1,3x3 line will be extended to 1x1,9x9. See also:
-	 * LineSegment.extendIfPossible.
+	 * Sets how many tile columns go into one collision chunk. With chunks, loadCollisions only prepares the geometry,
+	 * and the static bodies are created and destroyed as the visible part of the map moves, see
+	 * updateCollisionChunks. With 0, the default, the whole map gets a single static body at load.
+	 * <p>
+	 * The bodies are created straight from the chunk's edges in the CollisionData. For a compiled collision file, that
+	 * is the file as it is mapped, so neither the physics world nor the heap grows with the map's length.
 	 * 
-	 * @param lsx1 starting x of the new line segment
-	 * @param lsy1 starting y of the new line segment
-	 * @param lsx2 ending x of the new line segment
-	 * @param lsy2 ending y of the new line segment
-	 * @param collisionLineSegments the current list of line segments
+	 * @param columns
 	 */
-	private void addOrExtendCollisionLineSegment(float lsx1, float lsy1, float lsx2, float lsy2, ArrayList<LineSegment> collisionLineSegments) {
-		LineSegment line = new LineSegment(lsx1, lsy1, lsx2, lsy2);
-
-		boolean didextend = false;
+	public void setCollisionChunkColumns(int columns) {
+		collisionChunkColumns = columns;
+	}
 
-		for (LineSegment test : collisionLineSegments) {
-			if (test.extendIfPossible(line)) {
-				didextend = true;
-				break;
+	/**
+	 * Creates the static bodies of the collision chunks around the given part of the map, and destroys those that got
+	 * out of it. One more chunk is kept on either side, so bodies exist before the jumper reaches them. Must not be
+	 * called while the world is stepping.
+	 * 
+	 * @param fromX the left end of the needed part of the map, in map pixels
+	 * @param toX the right end of the needed part of the map, in map pixels
+	 */
+	public void updateCollisionChunks(float fromX, float toX) {
+		int first = Math.max(0, collisionData.chunkAt(fromX) - 1);
+		int last = Math.min(chunkBodies.length - 1, collisionData.chunkAt(toX) + 1);
+		if (first == firstActiveChunk && last == lastActiveChunk) return;
+
+		for (int chunk = firstActiveChunk; chunk <= lastActiveChunk; chunk++) {
+			if (chunk < first || chunk > last) {
+				collisionWorld.destroyBody(chunkBodies[chunk]);
+				chunkBodies[chunk] = null;
 			}
 		}
-
-		if (!didextend) {
-			collisionLineSegments.add(line);
+		for (int chunk = first; chunk <= last; chunk++) {
+			if (chunk < firstActiveChunk || chunk > lastActiveChunk) chunkBodies[chunk] = createChunkBody(chunk);
 		}
+
+		firstActiveChunk = first;
+		lastActiveChunk = last;
 	}
 
 	/**
-	 * Describes the start and end points of a line segment and contains a helper method useful for extending line
-	 * segments.
+	 * Creates the static body of a chunk from its edges. The body definition, the shape and the vectors are reused, as
+	 * chunks are created while the game runs.
 	 */
-	private class LineSegment {
-
-		private Vector2 start = new Vector2();
-		private Vector2 end = new Vector2();
-
-		/**
-		 * Construct a new LineSegment with the specified coordinates.
-		 * 
-		 * @param x1
-		 * @param y1
-		 * @param x2
-		 * @param y2
-		 */
-		public LineSegment(float x1, float y1, float x2, float y2) {
-			start = new Vector2(x1, y1);
-			end = new Vector2(x2, y2);
+	private Body createChunkBody(int chunk) {
+		Body body = collisionWorld.createBody(chunkBodyDef);
+		if (chunkShape == null) chunkShape = new EdgeShape();
+		float scale = 1 / collisionPixelsPerMeter;
+		for (int i = collisionData.getChunkStart(chunk), n = collisionData.getChunkEnd(chunk); i < n; i += 4) {
+			chunkShape.set(edgeStart.set(collisionData.getEdge(i), collisionData.getEdge(i + 1)).scl(scale),
+					edgeEnd.set(collisionData.getEdge(i + 2), collisionData.getEdge(i + 3)).scl(scale));
+			body.createFixture(chunkShape, 0);
 		}
+		return body;
+	}
 
-		/**
-		 * The "start" of the line. Start and end are misnomers, this is just one end of the line.
-		 * 
-		 * @return Vector2
-		 */
-		public Vector2 start() {
-			return start;
-		}
+	/**
+	 * Get the static collision edges of all chunks, including the map boundary, in map pixels.
+	 * 
+	 * @return CollisionData
+	 */
+	public CollisionData getCollisionData() {
+		return collisionData;
+	}
 
-		/**
-		 * The "end" of the line. Start and end are misnomers, this is just one end of the line.
-		 * 
-		 * @return Vector2
-		 */
-		public Vector2 end() {
-			return end;
-		}
+	private FileHandle packFileDirectory;
 
-		/**
-		 * Determine if the requested line could be tacked on to the end of this line with no kinks or gaps. If it can,
-		 * the current LineSegment will be extended by the length of the passed LineSegment.
-		 * 
-		 * @param lineSegment
-		 * @return boolean true if line was extended, false if not.
-		 */
-		public boolean extendIfPossible(LineSegment lineSegment) {
-			/**
-			 * First, let's see if the slopes of the two segments are the same.
-			 */
-			double slope1 = Math.atan2(end.y - start.y, end.x - start.x);
-			double slope2 = Math.atan2(lineSegment.end.y - lineSegment.start.y, lineSegment.end.x - lineSegment.start.x);
-
-			if (Math.abs(slope1 - slope2) > 1e-9) {
-				return false;
-			}
+	private AssetManager assetManager;
 
-			/**
-			 * Second, check if either end of this line segment is adjacent to the requested line segment. So, 1 pixel
-			 * away up through sqrt(2) away. Whichever two points are within the right range will be "merged" so that
-			 * the two outer points will describe the line segment.
-			 */
-			if (start.dst(lineSegment.start) <= Math.sqrt(2) + 1e-9) {
-				start.set(lineSegment.end);
-				return true;
-			} else if (end.dst(lineSegment.start) <= Math.sqrt(2) + 1e-9) {
-				end.set(lineSegment.end);
-				return true;
-			} else if (end.dst(lineSegment.end) <= Math.sqrt(2) + 1e-9) {
-				end.set(lineSegment.start);
-				return true;
-			} else if (start.dst(lineSegment.end) <= Math.sqrt(2) + 1e-9) {
-				start.set(lineSegment.start);
-				return true;
-			}
+	private TextureAtlas atlas;
+	private PackIndex atlasIndex;
 
-			return false;
-		}
+	private String tmxFile;
 
-		/**
-		 * Returns a pretty description of the LineSegment.
-		 * 
-		 * @return String
-		 */
-		@Override
-		public String toString() {
-			return "[" + start.x + "x" + start.y + "] -> [" + end.x + "x" + end.y + "]";
-		}
-	}
+	private String collisionFile;
 
-	private FileHandle packFileDirectory;
+	private float scale;
 
-	private OrthogonalTiledMapRenderer tileMapRenderer;
+	private CachedTiledMapRenderer tileMapRenderer;
 
 	private TiledMap map;
+
+	private MapGeometry geometry;
+
+	private CollisionData collisionData;
+	private Body[] chunkBodies;
+	private int collisionChunkColumns;
+	private int firstActiveChunk, lastActiveChunk;
+	private final BodyDef chunkBodyDef = new BodyDef();
+	private EdgeShape chunkShape;
+	private final Vector2 edgeStart = new Vector2();
+	private final Vector2 edgeEnd = new Vector2();
+	private World collisionWorld;
+	private float collisionPixelsPerMeter;
 }
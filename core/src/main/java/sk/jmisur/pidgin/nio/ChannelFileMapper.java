@@ -0,0 +1,38 @@
+package sk.jmisur.pidgin.nio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.badlogic.gdx.Files.FileType;
+import com.badlogic.gdx.files.FileHandle;
+
+import sk.jmisur.pidgin.core.MappedFiles;
+
+/**
+ * Maps binary asset files with FileChannel.map, for the desktop and Android backends. Not in the core package, which is
+ * compiled by GWT too. Only files on disk can be mapped: internal files packed in a jar or an APK are left to be read.
+ */
+public class ChannelFileMapper implements MappedFiles.FileMapper {
+
+	@Override
+	public ByteBuffer map(FileHandle file) {
+		if (file.type() == FileType.Classpath) return null;
+		File onDisk = file.file();
+		if (!onDisk.isFile()) return null;
+		try {
+			RandomAccessFile input = new RandomAccessFile(onDisk, "r");
+			try {
+				// The mapping stays valid after the file is closed.
+				return input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, input.length());
+			} finally {
+				input.close();
+			}
+		} catch (IOException ex) {
+			// Reading the file reports the error, if there is one.
+			return null;
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package sk.jmisur.pidgin.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import sk.jmisur.pidgin.core.InputSource;
+
+/**
+ * Passes the frames of another input source on to the game and writes them into a replay file, for InputReplay to
+ * play back. Uses java.io, so it is not part of the GWT module.
+ * <p>
+ * A replay file is the MAGIC int and the VERSION short, followed by six bytes per frame: the buttons as a short and
+ * the frame time as a float, big endian.
+ */
+public class InputRecorder implements InputSource, Disposable {
+
+	static final int MAGIC = 0x50444752; // "PDGR"
+	static final short VERSION = 1;
+	static final int HEADER_SIZE = 6;
+	static final int FRAME_SIZE = 6;
+
+	private final InputSource source;
+	private final DataOutputStream out;
+
+	public InputRecorder(InputSource source, File file) throws IOException {
+		this.source = source;
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+	}
+
+	@Override
+	public boolean nextFrame(float delta) {
+		if (!source.nextFrame(delta)) return false;
+		try {
+			out.writeShort(source.getButtons());
+			out.writeFloat(source.getDelta());
+		} catch (IOException ex) {
+			throw new GdxRuntimeException("Unable to record input", ex);
+		}
+		return true;
+	}
+
+	@Override
+	public int getButtons() {
+		return source.getButtons();
+	}
+
+	@Override
+	public float getDelta() {
+		return source.getDelta();
+	}
+
+	/**
+	 * Flushes and closes the replay file.
+	 */
+	@Override
+	public void dispose() {
+		try {
+			out.close();
+		} catch (IOException ex) {
+			throw new GdxRuntimeException("Unable to record input", ex);
+		}
+	}
+}
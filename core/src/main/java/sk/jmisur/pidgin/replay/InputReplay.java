@@ -0,0 +1,112 @@
+package sk.jmisur.pidgin.replay;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.badlogic.gdx.utils.TimeUtils;
+
+import sk.jmisur.pidgin.core.InputSource;
+import sk.jmisur.pidgin.core.Log;
+
+/**
+ * Plays back a replay file written by InputRecorder. Every frame gets the recorded buttons and the recorded frame time,
+ * whatever the actual frame time is, so the game steps through exactly the same simulation on every run. The wall
+ * time between frames is measured along, and reported through the log as a frame time report once the replay ends.
+ */
+public class InputReplay implements InputSource {
+
+	private final Log log;
+	private final short[] buttons;
+	private final float[] deltas;
+	private int frame = -1;
+
+	/**
+	 * Wall time between consecutive frames, for the report.
+	 */
+	private final long[] frameTimes;
+	private long lastFrame;
+
+	/**
+	 * Reads the whole replay file up front, so playing it back does no I/O.
+	 */
+	public InputReplay(File file, Log log) throws IOException {
+		this.log = log;
+		long length = file.length();
+		if (length < InputRecorder.HEADER_SIZE || (length - InputRecorder.HEADER_SIZE) % InputRecorder.FRAME_SIZE != 0)
+			throw new IOException("Not a replay file: " + file);
+		int frames = (int) ((length - InputRecorder.HEADER_SIZE) / InputRecorder.FRAME_SIZE);
+		buttons = new short[frames];
+		deltas = new float[frames];
+		frameTimes = new long[frames];
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != InputRecorder.MAGIC) throw new IOException("Not a replay file: " + file);
+			short version = in.readShort();
+			if (version != InputRecorder.VERSION) throw new IOException("Unsupported replay version " + version + ": " + file);
+			for (int i = 0; i < frames; i++) {
+				buttons[i] = in.readShort();
+				deltas[i] = in.readFloat();
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Ignores the actual frame time, the recorded one is used instead.
+	 */
+	@Override
+	public boolean nextFrame(float delta) {
+		if (frame == buttons.length) return false;
+
+		long now = TimeUtils.nanoTime();
+		if (frame >= 0) frameTimes[frame] = now - lastFrame;
+		lastFrame = now;
+
+		frame++;
+		if (frame < buttons.length) return true;
+		report();
+		return false;
+	}
+
+	@Override
+	public int getButtons() {
+		return buttons[frame];
+	}
+
+	@Override
+	public float getDelta() {
+		return deltas[frame];
+	}
+
+	public int getFrameCount() {
+		return buttons.length;
+	}
+
+	/**
+	 * Logs the p50, p95 and p99 frame time of the replay in milliseconds as the replay_frame_ms metric, and the frame
+	 * count, mean and maximum as a summary line.
+	 */
+	private void report() {
+		int count = frameTimes.length;
+		if (count == 0) return;
+		long[] sorted = frameTimes.clone();
+		Arrays.sort(sorted);
+		long total = 0;
+		for (long time : sorted)
+			total += time;
+		log.metric("replay_frame_ms", percentile(sorted, 0.5f) * 1e-6f, percentile(sorted, 0.95f) * 1e-6f, percentile(sorted, 0.99f) * 1e-6f);
+		log.log("Replay of " + count + " frames took " + total * 1e-6f + " ms, mean " + total * 1e-6f / count + " ms, max "
+				+ sorted[count - 1] * 1e-6f + " ms per frame");
+	}
+
+	private static long percentile(long[] sorted, float p) {
+		int rank = (int) Math.ceil(p * sorted.length);
+		return sorted[Math.max(rank, 1) - 1];
+	}
+}
@@ -0,0 +1,139 @@
+package sk.jmisur.pidgin.threads;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import sk.jmisur.pidgin.core.PhysicsThread;
+
+/**
+ * PhysicsThread on a java.lang.Thread, for the desktop and Android backends. Not part of the GWT module.
+ * <p>
+ * Input goes through a single producer, single consumer ring of button masks. Snapshots are written alternately into
+ * two buffers, guarded like a seqlock: a reader copies the latest complete buffer and only retries if the writer has
+ * meanwhile started to overwrite that same buffer, which takes two more steps. Neither side ever waits for the other.
+ */
+public class SteppingThread implements PhysicsThread, Runnable {
+
+	/**
+	 * Frames of input that can be queued, a power of two. The simulation drains the queue every step, so it only fills
+	 * up if the physics thread stalls, and then the newest frames are dropped.
+	 */
+	private static final int INPUT_CAPACITY = 64;
+
+	/**
+	 * How far the thread may fall behind its schedule before it gives up catching up, like Pidgin's
+	 * MAX_STEPS_PER_FRAME.
+	 */
+	private static final int MAX_STEPS_BEHIND = 5;
+
+	private final int[] inputs = new int[INPUT_CAPACITY];
+	private final AtomicInteger inputHead = new AtomicInteger();
+	private final AtomicInteger inputTail = new AtomicInteger();
+
+	private AtomicIntegerArray[] snapshots;
+	private float[] state;
+	/**
+	 * Snapshots whose writing has started, and the latest one that is complete.
+	 */
+	private final AtomicInteger snapshotsStarted = new AtomicInteger();
+	private volatile int snapshotPublished;
+
+	private Simulation simulation;
+	private long stepNanos;
+	private Thread thread;
+	private volatile boolean running;
+
+	@Override
+	public void start(Simulation simulation, int stateSize, float timeStep) {
+		if (thread != null) throw new IllegalStateException("Already started");
+		this.simulation = simulation;
+		stepNanos = (long) (timeStep * 1e9);
+		if (snapshots == null) {
+			snapshots = new AtomicIntegerArray[] { new AtomicIntegerArray(stateSize), new AtomicIntegerArray(stateSize) };
+			state = new float[stateSize];
+		}
+
+		running = true;
+		thread = new Thread(this, "Physics");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public void run() {
+		long next = System.nanoTime();
+		while (running) {
+			for (int buttons = pollInput(); buttons != -1; buttons = pollInput())
+				simulation.input(buttons);
+			simulation.step();
+			simulation.snapshot(state);
+			publish(state);
+
+			next += stepNanos;
+			long wait = next - System.nanoTime();
+			if (wait > 0) {
+				try {
+					Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+				} catch (InterruptedException ex) {
+					return;
+				}
+			} else if (wait < -MAX_STEPS_BEHIND * stepNanos) {
+				next = System.nanoTime();
+			}
+		}
+	}
+
+	@Override
+	public void postInput(int buttons) {
+		int tail = inputTail.get();
+		if (tail - inputHead.get() == INPUT_CAPACITY) return;
+		inputs[tail & (INPUT_CAPACITY - 1)] = buttons;
+		// Releases the slot written above to the consumer.
+		inputTail.lazySet(tail + 1);
+	}
+
+	/**
+	 * Takes the oldest queued input, or returns -1 if there is none. Button masks are never negative.
+	 */
+	private int pollInput() {
+		int head = inputHead.get();
+		if (head == inputTail.get()) return -1;
+		int buttons = inputs[head & (INPUT_CAPACITY - 1)];
+		inputHead.lazySet(head + 1);
+		return buttons;
+	}
+
+	private void publish(float[] state) {
+		int version = snapshotsStarted.incrementAndGet();
+		AtomicIntegerArray snapshot = snapshots[version & 1];
+		for (int i = 0; i < state.length; i++)
+			snapshot.set(i, Float.floatToRawIntBits(state[i]));
+		snapshotPublished = version;
+	}
+
+	@Override
+	public int readSnapshot(float[] state) {
+		while (true) {
+			int version = snapshotPublished;
+			if (version == 0) return 0;
+			AtomicIntegerArray snapshot = snapshots[version & 1];
+			for (int i = 0; i < state.length; i++)
+				state[i] = Float.intBitsToFloat(snapshot.get(i));
+			// The same buffer is written again for version + 2, the copy is whole unless that has started.
+			if (snapshotsStarted.get() - version < 2) return version;
+		}
+	}
+
+	@Override
+	public void stop() {
+		if (thread == null) return;
+		running = false;
+		thread.interrupt();
+		try {
+			thread.join();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+	}
+}
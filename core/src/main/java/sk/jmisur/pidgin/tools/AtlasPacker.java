@@ -0,0 +1,140 @@
+package sk.jmisur.pidgin.tools;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
+import com.badlogic.gdx.imagepacker.TexturePacker;
+import com.badlogic.gdx.imagepacker.TexturePacker.Settings;
+import com.badlogic.gdx.utils.XmlReader;
+import com.badlogic.gdx.utils.XmlReader.Element;
+
+/**
+ * Packs the tiles of a map's tilesets and the character sprites into a single texture atlas, loaded by TiledMapHelper
+ * through the map's atlas property, so the map and the characters are drawn from the same textures. The tilesets are
+ * cut into one image per tile, named tileset_localid for the TexturePacker's fortiledmap mode, and the character images
+ * are cropped to their used area, keeping the top left corner in place.
+ */
+public class AtlasPacker {
+
+	/**
+	 * Name of the staging directory, which is also the prefix of the page files.
+	 */
+	public static final String PAGE_PREFIX = "atlas";
+
+	/**
+	 * Cuts the tiles of all tilesets of the map into the staging directory.
+	 *
+	 * @return number of tiles written
+	 */
+	public static int stageTiles(File tmxFile, File stagingDir) throws IOException {
+		Element map = new XmlReader().parse(new FileHandle(tmxFile));
+		int count = 0;
+		for (Element tileset : map.getChildrenByName("tileset")) {
+			if (tileset.getAttribute("source", null) != null) throw new IOException("External tilesets are not supported: " + tmxFile);
+			String name = tileset.getAttribute("name");
+			int tileWidth = tileset.getIntAttribute("tilewidth");
+			int tileHeight = tileset.getIntAttribute("tileheight");
+			int spacing = tileset.getIntAttribute("spacing", 0);
+			int margin = tileset.getIntAttribute("margin", 0);
+			File imageFile = new File(tmxFile.getParentFile(), tileset.getChildByName("image").getAttribute("source"));
+			BufferedImage image = ImageIO.read(imageFile);
+			if (image == null) throw new IOException("Unable to read tileset image: " + imageFile);
+
+			// Local ids run from left to right, top to bottom, the same way Tiled and TmxMapLoader number them.
+			int id = 0;
+			for (int y = margin; y + tileHeight <= image.getHeight() - margin; y += tileHeight + spacing) {
+				for (int x = margin; x + tileWidth <= image.getWidth() - margin; x += tileWidth + spacing) {
+					write(image.getSubimage(x, y, tileWidth, tileHeight), new File(stagingDir, name + "_" + id + ".png"));
+					id++;
+				}
+			}
+			count += id;
+		}
+		return count;
+	}
+
+	/**
+	 * Copies the images of the directory into the staging directory, cropped to the right and bottom edge of their
+	 * opaque pixels.
+	 *
+	 * @return number of images written
+	 */
+	public static int stageSprites(File imageDir, File stagingDir) throws IOException {
+		File[] files = imageDir.listFiles();
+		if (files == null) throw new IOException("Not a directory: " + imageDir);
+		int count = 0;
+		for (File file : files) {
+			if (!file.getName().endsWith(".png")) continue;
+			BufferedImage image = ImageIO.read(file);
+			int width = 0, height = 0;
+			for (int y = 0; y < image.getHeight(); y++) {
+				for (int x = 0; x < image.getWidth(); x++) {
+					if ((image.getRGB(x, y) >>> 24) == 0) continue;
+					width = Math.max(width, x + 1);
+					height = Math.max(height, y + 1);
+				}
+			}
+			if (width == 0) continue;
+			write(image.getSubimage(0, 0, width, height), new File(stagingDir, file.getName()));
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Packs the staged images into the pack file and pages of the output directory, and indexes the pack file.
+	 */
+	public static void pack(File stagingDir, File outputDir) throws IOException {
+		Settings settings = new Settings();
+		settings.fortiledmap = true;
+		settings.alias = true;
+		settings.defaultFilterMin = TextureFilter.Linear;
+		settings.defaultFilterMag = TextureFilter.Linear;
+		// The smallest maximum texture size of the devices the game runs on.
+		settings.maxWidth = 2048;
+		settings.maxHeight = 2048;
+		// The pages stay PNGs, not raw pages: the atlas goes into the assets shared with the html build, and GWT can't
+		// load .cim files.
+		TexturePacker.process(settings, stagingDir.getPath(), outputDir.getPath());
+		PackIndexWriter.write(new File(outputDir, "pack"));
+	}
+
+	private static void write(BufferedImage image, File file) throws IOException {
+		// getSubimage shares the raster of the tileset, copy it so only the tile is encoded.
+		BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+		copy.getGraphics().drawImage(image, 0, 0, null);
+		ImageIO.write(copy, "png", file);
+	}
+
+	private static void clean(File dir) {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files)
+				file.delete();
+		}
+		dir.mkdirs();
+	}
+
+	static public void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("Usage: TMXFILE OUTPUTDIR [IMAGEDIR...]");
+			return;
+		}
+		File tmxFile = new File(args[0]);
+		File outputDir = new File(args[1]);
+		File stagingDir = new File(new File(System.getProperty("java.io.tmpdir"), "pidgin-" + tmxFile.getName()), PAGE_PREFIX);
+		clean(stagingDir);
+
+		int tiles = stageTiles(tmxFile, stagingDir);
+		int sprites = 0;
+		for (int i = 2; i < args.length; i++)
+			sprites += stageSprites(new File(args[i]), stagingDir);
+		pack(stagingDir, outputDir);
+		System.out.println("Packed " + tiles + " tiles and " + sprites + " sprites: " + new File(outputDir, "pack"));
+	}
+}
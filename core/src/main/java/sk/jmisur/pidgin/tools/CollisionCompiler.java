@@ -0,0 +1,170 @@
+package sk.jmisur.pidgin.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import sk.jmisur.pidgin.core.CollisionBuilder;
+import sk.jmisur.pidgin.core.CollisionData;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Base64Coder;
+import com.badlogic.gdx.utils.XmlReader;
+import com.badlogic.gdx.utils.XmlReader.Element;
+
+/**
+ * Compiles a map's tile collision file and its tmx layout, all tile layers and object groups, into the binary file read
+ * by TiledMapHelper.loadCompiledCollisions. The per-tile segments are expanded over the map and merged at build time,
+ * so the game only has to create the fixtures at level load. Runs without a Gdx backend: the tmx is read with
+ * XmlReader rather than TmxMapLoader, which would need GL to load the tilesets.
+ */
+public class CollisionCompiler {
+
+	private static final int FLIPPED_FLAGS = 0xe0000000;
+
+	/**
+	 * Builds the merged edges of the given map.
+	 * 
+	 * @return int[] x1, y1, x2, y2 of every edge in map pixels
+	 */
+	public static int[] compile(FileHandle tmxFile, FileHandle collisionFile) throws IOException {
+		Element map = new XmlReader().parse(tmxFile);
+		int tileWidth = map.getIntAttribute("tilewidth");
+		int tileHeight = map.getIntAttribute("tileheight");
+
+		CollisionBuilder builder = new CollisionBuilder(tileWidth, tileHeight);
+		builder.readTileCollisions(collisionFile.readString());
+
+		int mapHeight = map.getIntAttribute("height") * tileHeight;
+
+		for (int i = 0; i < map.getChildCount(); i++) {
+			Element layer = map.getChild(i);
+			if (layer.getName().equals("layer")) addTileLayer(builder, layer);
+			else if (layer.getName().equals("objectgroup")) addObjectGroup(builder, layer, mapHeight);
+		}
+
+		return builder.getEdges();
+	}
+
+	private static void addTileLayer(CollisionBuilder builder, Element layer) throws IOException {
+		int width = layer.getIntAttribute("width");
+		int height = layer.getIntAttribute("height");
+		int[] gids = readLayerData(layer.getChildByName("data"), width * height);
+		for (int i = 0; i < gids.length; i++) {
+			int gid = gids[i] & ~FLIPPED_FLAGS;
+			// tmx rows run from the top, map rows from the bottom
+			if (gid != 0) builder.addTile(gid, i % width, height - 1 - i / width);
+		}
+	}
+
+	/**
+	 * Adds the polylines, polygons and rectangles of an object group, the same way TiledMapHelper does for the object
+	 * layers loaded by TmxMapLoader. Tmx object coordinates run from the top, map coordinates from the bottom.
+	 */
+	private static void addObjectGroup(CollisionBuilder builder, Element group, int mapHeight) {
+		for (Element object : group.getChildrenByName("object")) {
+			if (object.getChildByName("ellipse") != null) continue;
+
+			float x = object.getFloatAttribute("x", 0);
+			float y = object.getFloatAttribute("y", 0);
+
+			Element polyline = object.getChildByName("polyline");
+			Element polygon = object.getChildByName("polygon");
+			if (polyline != null || polygon != null) {
+				String[] points = (polyline != null ? polyline : polygon).getAttribute("points").split(" ");
+				float[] vertices = new float[points.length * 2];
+				for (int i = 0; i < points.length; i++) {
+					String[] point = points[i].split(",");
+					vertices[i * 2] = x + Float.parseFloat(point[0]);
+					vertices[i * 2 + 1] = mapHeight - (y + Float.parseFloat(point[1]));
+				}
+				builder.addPolyline(vertices, polygon != null);
+			} else if (object.getAttribute("gid", null) == null) {
+				float width = object.getFloatAttribute("width", 0);
+				float height = object.getFloatAttribute("height", 0);
+				builder.addRectangle(x, mapHeight - y - height, width, height);
+			}
+		}
+	}
+
+	/**
+	 * Writes the edges of the given map in the compiled format described at CollisionBuilder.COMPILED_MAGIC, cut into
+	 * chunks of CollisionData.CHUNK_COLUMNS, so the game streams them without cutting them again.
+	 */
+	public static void write(FileHandle tmxFile, int[] edges, File outputFile) throws IOException {
+		Element map = new XmlReader().parse(tmxFile);
+		int tileWidth = map.getIntAttribute("tilewidth");
+		int width = map.getIntAttribute("width") * tileWidth;
+		int height = map.getIntAttribute("height") * map.getIntAttribute("tileheight");
+		CollisionData data = CollisionData.chunk(width, height, edges, CollisionData.CHUNK_COLUMNS * tileWidth);
+
+		outputFile.getAbsoluteFile().getParentFile().mkdirs();
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile)));
+		try {
+			output.writeInt(CollisionBuilder.COMPILED_MAGIC);
+			output.writeInt(CollisionBuilder.COMPILED_VERSION);
+			output.writeInt(width);
+			output.writeInt(height);
+			output.writeFloat(data.chunkWidth);
+			output.writeInt(data.getChunkCount());
+			for (int chunk = 0; chunk < data.getChunkCount(); chunk++)
+				output.writeInt(data.getChunkStart(chunk));
+			int end = data.getChunkEnd(data.getChunkCount() - 1);
+			output.writeInt(end);
+			for (int i = 0; i < end; i++)
+				output.writeFloat(data.getEdge(i));
+		} finally {
+			output.close();
+		}
+	}
+
+	static int[] readLayerData(Element data, int count) throws IOException {
+		int[] gids = new int[count];
+		String encoding = data.getAttribute("encoding", null);
+
+		if (encoding == null) {
+			for (int i = 0; i < count; i++)
+				gids[i] = data.getChild(i).getIntAttribute("gid", 0);
+		} else if (encoding.equals("csv")) {
+			String[] values = data.getText().split(",");
+			for (int i = 0; i < count; i++)
+				gids[i] = (int) Long.parseLong(values[i].trim());
+		} else if (encoding.equals("base64")) {
+			InputStream bytes = new ByteArrayInputStream(Base64Coder.decode(data.getText().trim()));
+			String compression = data.getAttribute("compression", null);
+			if ("gzip".equals(compression)) bytes = new GZIPInputStream(bytes);
+			else if ("zlib".equals(compression)) bytes = new InflaterInputStream(bytes);
+
+			DataInputStream input = new DataInputStream(bytes);
+			try {
+				for (int i = 0; i < count; i++)
+					gids[i] = Integer.reverseBytes(input.readInt());
+			} finally {
+				input.close();
+			}
+		} else {
+			throw new IOException("Unsupported tmx layer encoding: " + encoding);
+		}
+		return gids;
+	}
+
+	static public void main(String[] args) throws Exception {
+		if (args.length != 3) {
+			System.out.println("Usage: TMXFILE COLLISIONFILE OUTPUTFILE");
+			return;
+		}
+		FileHandle tmxFile = new FileHandle(new File(args[0]));
+		File outputFile = new File(args[2]);
+
+		int[] edges = compile(tmxFile, new FileHandle(new File(args[1])));
+		write(tmxFile, edges, outputFile);
+		System.out.println("Wrote " + edges.length / 4 + " edges: " + outputFile);
+	}
+}
@@ -0,0 +1,178 @@
+package sk.jmisur.pidgin.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+import sk.jmisur.pidgin.core.PackIndex;
+
+import com.badlogic.gdx.math.MathUtils;
+
+/**
+ * Writes the binary index of a pack file, see PackIndex, next to it as <code>pack.index</code>. Run once the pack file
+ * is complete, so the whole pack is parsed and indexed once, however many directories were packed into it.
+ */
+public class PackIndexWriter {
+
+	/**
+	 * Indexes the pack file, keyed by its length and modification time, which TiledMapHelper checks against the pack
+	 * file it loads.
+	 */
+	public static void write(File packFile) throws IOException {
+		byte[] pack = readFile(packFile);
+		writeFile(new File(packFile.getPath() + ".index"), index(pack, packFile.lastModified()));
+	}
+
+	/**
+	 * Returns the index of the pack file text.
+	 */
+	static byte[] index(byte[] pack, long packModified) throws IOException {
+		ArrayList<String> pageNames = new ArrayList<String>();
+		ArrayList<int[]> pageRanges = new ArrayList<int[]>();
+		ArrayList<String> regionNames = new ArrayList<String>();
+		ArrayList<int[]> regions = new ArrayList<int[]>();
+		int[] region = null;
+		boolean pageNameNext = false, inPageHeader = false;
+		for (int start = 0, end; start < pack.length; start = end + 1) {
+			end = start;
+			while (end < pack.length && pack[end] != '\n')
+				end++;
+			String line = new String(pack, start, end - start, "UTF-8");
+			if (line.length() == 0) {
+				// A blank line ends the previous page and starts the next one.
+				if (!pageRanges.isEmpty()) pageRanges.get(pageRanges.size() - 1)[1] = start - pageRanges.get(pageRanges.size() - 1)[0];
+				pageRanges.add(new int[] { start, 0 });
+				pageNameNext = true;
+			} else if (pageNameNext) {
+				pageNames.add(line);
+				pageNameNext = false;
+				inPageHeader = true;
+			} else if (line.startsWith("  ")) {
+				if (region == null) continue;
+				String[] entry = line.trim().split(": ", 2);
+				String[] values = entry.length == 2 ? entry[1].split(", ") : new String[0];
+				if (entry[0].equals("rotate")) region[11] = Boolean.parseBoolean(values[0]) ? 1 : 0;
+				else if (entry[0].equals("index")) region[2] = Integer.parseInt(values[0]);
+				else if (values.length == 2) {
+					int field = entry[0].equals("xy") ? 3 : entry[0].equals("size") ? 5 : entry[0].equals("offset") ? 7 : entry[0].equals("orig") ? 9 : -1;
+					if (field != -1) {
+						region[field] = Integer.parseInt(values[0]);
+						region[field + 1] = Integer.parseInt(values[1]);
+					}
+				}
+			} else if (inPageHeader && (line.startsWith("format:") || line.startsWith("filter:") || line.startsWith("repeat:"))) {
+				continue;
+			} else {
+				inPageHeader = false;
+				// page, pack offset, index, x, y, width, height, offset x and y, original width and height, rotate,
+				// position in the atlas.
+				region = new int[] { pageNames.size() - 1, start, -1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 };
+				regionNames.add(line);
+				regions.add(region);
+			}
+		}
+		if (!pageRanges.isEmpty()) pageRanges.get(pageRanges.size() - 1)[1] = pack.length - pageRanges.get(pageRanges.size() - 1)[0];
+
+		// The atlas sorts its regions by index, stable and with the regions without an index last.
+		ArrayList<int[]> atlasOrder = new ArrayList<int[]>(regions);
+		Collections.sort(atlasOrder, new Comparator<int[]>() {
+
+			@Override
+			public int compare(int[] o1, int[] o2) {
+				int index1 = o1[2] == -1 ? Integer.MAX_VALUE : o1[2], index2 = o2[2] == -1 ? Integer.MAX_VALUE : o2[2];
+				return index1 < index2 ? -1 : index1 == index2 ? 0 : 1;
+			}
+		});
+		for (int i = 0; i < atlasOrder.size(); i++)
+			atlasOrder.get(i)[12] = i;
+
+		// Lay out the regions after the header, pages and table, chaining regions with the same name.
+		int tableSize = MathUtils.nextPowerOfTwo(Math.max(2, regions.size() * 2));
+		int offset = PackIndex.HEADER_SIZE;
+		byte[][] pageNameBytes = new byte[pageNames.size()][];
+		for (int i = 0; i < pageNameBytes.length; i++) {
+			pageNameBytes[i] = pageNames.get(i).getBytes("UTF-8");
+			offset += 4 + pageNameBytes[i].length + 8;
+		}
+		offset += tableSize * 4;
+		byte[][] regionNameBytes = new byte[regions.size()][];
+		int[] regionOffsets = new int[regions.size()];
+		int[] nextOffsets = new int[regions.size()];
+		int[] table = new int[tableSize];
+		HashMap<String, Integer> lastWithName = new HashMap<String, Integer>();
+		for (int i = 0; i < regionOffsets.length; i++) {
+			String name = regionNames.get(i);
+			regionNameBytes[i] = name.getBytes("UTF-8");
+			regionOffsets[i] = offset;
+			offset += 8 + regionNameBytes[i].length + 13 * 4;
+			Integer last = lastWithName.put(name, i);
+			if (last != null) {
+				nextOffsets[last] = regionOffsets[i];
+				continue;
+			}
+			int slot = name.hashCode() & (tableSize - 1);
+			while (table[slot] != 0)
+				slot = (slot + 1) & (tableSize - 1);
+			table[slot] = regionOffsets[i];
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(offset);
+		DataOutputStream output = new DataOutputStream(bytes);
+		output.writeInt(PackIndex.MAGIC);
+		output.writeInt(PackIndex.VERSION);
+		output.writeInt(pack.length);
+		output.writeLong(packModified);
+		output.writeInt(pageNames.size());
+		output.writeInt(regions.size());
+		output.writeInt(tableSize);
+		for (int i = 0; i < pageNameBytes.length; i++) {
+			output.writeInt(pageNameBytes[i].length);
+			output.write(pageNameBytes[i]);
+			output.writeInt(pageRanges.get(i)[0]);
+			output.writeInt(pageRanges.get(i)[1]);
+		}
+		for (int slot : table)
+			output.writeInt(slot);
+		for (int i = 0; i < regionOffsets.length; i++) {
+			output.writeInt(nextOffsets[i]);
+			output.writeInt(regionNameBytes[i].length);
+			output.write(regionNameBytes[i]);
+			for (int value : regions.get(i))
+				output.writeInt(value);
+		}
+		output.close();
+		return bytes.toByteArray();
+	}
+
+	private static byte[] readFile(File file) throws IOException {
+		FileChannel channel = new FileInputStream(file).getChannel();
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining())
+				if (channel.read(buffer) == -1) break;
+			return buffer.array();
+		} finally {
+			channel.close();
+		}
+	}
+
+	private static void writeFile(File file, byte[] bytes) throws IOException {
+		FileChannel channel = new FileOutputStream(file).getChannel();
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		} finally {
+			channel.close();
+		}
+	}
+}
@@ -1,11 +1,23 @@
 package sk.jmisur.pidgin.java;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
 import com.badlogic.gdx.backends.lwjgl.LwjglApplication;
 
 import org.apache.commons.configuration.ConfigurationException;
 
+import sk.jmisur.pidgin.core.GdxInputSource;
+import sk.jmisur.pidgin.core.InputSource;
 import sk.jmisur.pidgin.core.Log;
+import sk.jmisur.pidgin.core.MappedFiles;
 import sk.jmisur.pidgin.core.Pidgin;
+import sk.jmisur.pidgin.nio.ChannelFileMapper;
+import sk.jmisur.pidgin.replay.InputRecorder;
+import sk.jmisur.pidgin.replay.InputReplay;
+import sk.jmisur.pidgin.threads.SteppingThread;
 
 /**
  * Copyright 2011 David Kirchner dpk@dpk.net Licensed under the Apache License, Version 2.0 (the "License"); you may not
@@ -18,8 +30,29 @@ import sk.jmisur.pidgin.core.Pidgin;
 
 public class PidginDesktop {
 
-	public static void main(String[] argv) throws ConfigurationException {
-		new LwjglApplication(new Pidgin(new SysOutLog()), "Pidgin", 800, 480, false);
+	/**
+	 * Options: --physics-thread steps the physics off the render thread, --record FILE records the input into a replay
+	 * file and --replay FILE plays one back. Recording and replaying step the physics on the render thread, so a
+	 * replay runs through exactly the recorded steps.
+	 */
+	public static void main(String[] argv) throws ConfigurationException, IOException {
+		List<String> args = Arrays.asList(argv);
+		Log log = new SysOutLog();
+
+		InputSource input = null;
+		int record = args.indexOf("--record");
+		int replay = args.indexOf("--replay");
+		// Both options take the file as the next argument.
+		if ((replay != -1 && replay + 1 == args.size()) || (record != -1 && record + 1 == args.size())) {
+			System.out.println("Usage: [--physics-thread] [--record FILE | --replay FILE]");
+			return;
+		}
+		if (replay != -1) input = new InputReplay(new File(args.get(replay + 1)), log);
+		else if (record != -1) input = new InputRecorder(new GdxInputSource(), new File(args.get(record + 1)));
+
+		boolean physicsThread = input == null && args.contains("--physics-thread");
+		MappedFiles.setMapper(new ChannelFileMapper());
+		new LwjglApplication(new Pidgin(log, physicsThread ? new SteppingThread() : null, input), "Pidgin", 800, 480, false);
 	}
 
 	public static class SysOutLog implements Log {
@@ -29,6 +62,14 @@ public class PidginDesktop {
 			System.out.println(string);
 		}
 
+		/**
+		 * Prints one key=value line per metric, so the output can be grepped and parsed.
+		 */
+		@Override
+		public void metric(String name, float p50, float p95, float p99) {
+			System.out.println("metric name=" + name + " p50=" + p50 + " p95=" + p95 + " p99=" + p99);
+		}
+
 	}
 
 }
@@ -21,6 +21,11 @@ public class PidginHtml extends GwtApplication {
 		public void log(String string) {
 			GWT.log(string);
 		}
+
+		@Override
+		public void metric(String name, float p50, float p95, float p99) {
+			GWT.log("metric name=" + name + " p50=" + p50 + " p95=" + p95 + " p99=" + p99);
+		}
 	}
 
 	@Override